@@ -1,52 +1,203 @@
 package gc.grivyzom.playtimer;
 
+import gc.grivyzom.playtimer.admin.BulkJobManager;
+import gc.grivyzom.playtimer.afk.AfkManager;
 import gc.grivyzom.playtimer.config.ConfigManager;
+import gc.grivyzom.playtimer.config.ConfigReloader;
 import gc.grivyzom.playtimer.commands.PlayTimerCommand;
 import gc.grivyzom.playtimer.commands.TimeCommand;
+import gc.grivyzom.playtimer.history.HistoryService;
+import gc.grivyzom.playtimer.history.Leaderboard;
 import gc.grivyzom.playtimer.listeners.PlayTimeListener;
+import gc.grivyzom.playtimer.lookup.PlayerLookup;
+import gc.grivyzom.playtimer.placeholders.PlayTimerExpansion;
+import gc.grivyzom.playtimer.storage.AsyncStorage;
+import gc.grivyzom.playtimer.startup.LoginGate;
+import gc.grivyzom.playtimer.startup.StartupLoader;
 import gc.grivyzom.playtimer.storage.DatabaseManager;
 import gc.grivyzom.playtimer.storage.JsonStorageManager;
 import gc.grivyzom.playtimer.storage.StorageManager;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
 import net.luckperms.api.LuckPerms;
 import net.luckperms.api.LuckPermsProvider;
 
 import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
 
 public class PlayTimerPlugin extends JavaPlugin {
 
     private ConfigManager configManager;
-    private StorageManager storageManager;
+    // Se asigna desde el hilo de arranque cuando el storage queda abierto
+    private volatile StorageManager storageManager;
+    private AsyncStorage asyncStorage;
+    private AfkManager afkManager;
+    private HistoryService historyService;
+    private Leaderboard leaderboard;
+    private PlayerLookup playerLookup;
+    private PlayTimeListener playTimeListener;
+    private BulkJobManager bulkJobManager;
+    private BukkitTask autoSaveTask;
 
     @Override
     public void onEnable() {
+        long enableStart = System.currentTimeMillis();
+
         // 1) Guardar/leer config
         saveDefaultConfig();
         configManager = new ConfigManager(this);
 
-        // 2) Intentar MySQL, si falla caer en JSON
-        var db = configManager.getDatabaseSettings();
-        try {
-            storageManager = new DatabaseManager(
-                    db.toJdbcUrl(),
-                    db.user(),
-                    db.password()
-            );
-            getLogger().info("PlayTimer: conectado a MySQL.");
-        } catch (SQLException ex) {
-            getLogger().warning("No se pudo conectar a MySQL (" + ex.getMessage() +
-                    "), usando JsonStorageManager.");
-            storageManager = new JsonStorageManager(this);
+        // 2) Abrir storage fuera del hilo principal (MySQL o, si falla, JSON); lo que se encole antes espera
+        StartupLoader loader = new StartupLoader(this);
+        CompletableFuture<StorageManager> storageReady = loader.openStorage(configManager.getDatabaseSettings(),
+                configManager.getStartupSettings().connectTimeoutSeconds());
+        storageReady.thenAccept(storage -> storageManager = storage);
+        asyncStorage = new AsyncStorage(this, storageReady);
+        historyService = new HistoryService(asyncStorage);
+        leaderboard = new Leaderboard(asyncStorage, configManager);
+        playerLookup = new PlayerLookup(this, asyncStorage, configManager.getLookupSettings());
+        getServer().getPluginManager().registerEvents(new LoginGate(storageReady, configManager), this);
+        loader.warmUp(storageReady, playerLookup, leaderboard);
+
+        // 3) Detección AFK por muestreo periódico
+        afkManager = new AfkManager(this, configManager.getAfkSettings());
+        getServer().getPluginManager().registerEvents(afkManager, this);
+        afkManager.start();
+
+        // 4) Registrar listener y abrir sesión a quien ya esté conectado (p. ej. tras un /reload)
+        playTimeListener = new PlayTimeListener(historyService, afkManager, playerLookup);
+        getServer().getPluginManager().registerEvents(playTimeListener, this);
+        for (Player online : getServer().getOnlinePlayers()) {
+            playTimeListener.startSession(online);
+        }
+
+        // 5) Volcado periódico de sesiones a storage
+        scheduleAutoSave();
+
+        // 6) Registrar comandos
+        bulkJobManager = new BulkJobManager(this, asyncStorage);
+        PlayTimerCommand playTimerCommand = new PlayTimerCommand(asyncStorage, historyService, playerLookup,
+                bulkJobManager, new ConfigReloader(this));
+        getCommand("playtimer").setExecutor(playTimerCommand);
+        getCommand("playtimer").setTabCompleter(playTimerCommand);
+        TimeCommand timeCommand = new TimeCommand(asyncStorage, playerLookup);
+        getCommand("playtime").setExecutor(timeCommand);
+        getCommand("playtime").setTabCompleter(timeCommand);
+
+        // 7) Placeholders (opcional)
+        if (getServer().getPluginManager().isPluginEnabled("PlaceholderAPI")) {
+            new PlayTimerExpansion(this, historyService, leaderboard).register();
+        }
+        getLogger().info("[Arranque] onEnable: " + (System.currentTimeMillis() - enableStart) + " ms");
+    }
+
+    @Override
+    public void onDisable() {
+        if (afkManager != null) {
+            afkManager.stop();
+        }
+        if (playTimeListener != null) {
+            playTimeListener.flushAll();
+        }
+        if (asyncStorage != null) {
+            asyncStorage.shutdown();
+        }
+    }
+
+    private void scheduleAutoSave() {
+        if (autoSaveTask != null) {
+            autoSaveTask.cancel();
         }
+        long autoSave = Math.max(1, configManager.getAutoSaveMinutes()) * 60L * 20L;
+        autoSaveTask = getServer().getScheduler().runTaskTimer(this, () -> {
+            playTimeListener.flushAll();
+            historyService.pruneHourly(configManager.getHistorySettings().hourlyRetentionDays());
+            asyncStorage.run(StorageManager::flush);
+            leaderboard.refresh();
+        }, autoSave, autoSave);
+    }
 
-        // 3) Registrar listener con nuestro StorageManager
-        getServer().getPluginManager()
-                .registerEvents(new PlayTimeListener(storageManager), this);
+    /**
+     * Propaga una configuración recién aplicada a los componentes que guardan estado derivado de ella.
+     * Llamar desde el hilo principal; no incluye el cambio de base de datos (ver {@link #reconnectStorage}).
+     */
+    public void applyRuntimeSettings(ConfigManager.RuntimeSettings previous, ConfigManager.RuntimeSettings current) {
+        afkManager.applySettings(current.afk());
+        playerLookup.applySettings(current.lookup());
+        if (previous.general().autoSaveMinutes() != current.general().autoSaveMinutes()) {
+            scheduleAutoSave();
+        }
+    }
 
-        // 4) Registrar comandos pasándoles el StorageManager
-        getCommand("playtimer").setExecutor(new PlayTimerCommand(storageManager));
-        getCommand("playtime").setExecutor(new TimeCommand(storageManager));
+    /**
+     * Abre una conexión con los nuevos parámetros fuera del hilo principal y, si tiene éxito, la pone en lugar
+     * del storage actual. Si falla se mantiene el storage anterior.
+     * <p>
+     *     Si el storage actual es el fallback JSON, lo registrado en él (totales, historial y usuarios) se suma a
+     *     MySQL en la misma tarea que hace el cambio y los ficheros se archivan; si esa migración falla tampoco se
+     *     cambia de storage. Entre dos bases MySQL no se copia nada.
+     * </p>
+     *
+     * @param executor hilo en el que se abre la conexión (bloqueante; no usar el pool común).
+     * @return futuro completado en el hilo principal, tanto si se cambió de storage como si no.
+     */
+    public CompletableFuture<StorageSwitch> reconnectStorage(ConfigManager.DatabaseSettings db, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                DatabaseManager database = new DatabaseManager(db.toJdbcUrl(), db.user(), db.password(),
+                        configManager.getStartupSettings().connectTimeoutSeconds());
+                try {
+                    database.ensureSchema();
+                } catch (SQLException ex) {
+                    database.close();
+                    throw ex;
+                }
+                return database;
+            } catch (SQLException ex) {
+                getLogger().warning("No se pudo conectar con la nueva configuración de MySQL (" + ex.getMessage() +
+                        "), se mantiene el storage actual.");
+                return null;
+            }
+        }, executor).thenCompose(next -> {
+            if (next == null) {
+                return CompletableFuture.completedFuture(new StorageSwitch(false, 0));
+            }
+            return asyncStorage.replace(next, previous -> previous instanceof JsonStorageManager json
+                    ? json.migrateInto(next) : 0).thenApplyAsync(result -> {
+                int migrated = result != null ? result : 0;
+                storageManager = next;
+                // Cachés derivadas del storage anterior: se rehacen contra el nuevo
+                playerLookup.clear();
+                playerLookup.warmUp();
+                leaderboard.refresh();
+                for (Player online : getServer().getOnlinePlayers()) {
+                    playerLookup.registerJoin(online);
+                    historyService.load(online.getUniqueId());
+                }
+                getLogger().info("PlayTimer: storage sustituido por la nueva conexión a MySQL"
+                        + (migrated > 0 ? " (" + migrated + " jugadores migrados desde JSON)." : "."));
+                return new StorageSwitch(true, migrated);
+            }, asyncStorage.mainThread());
+        }).handleAsync((result, error) -> {
+            // Reenvía también los fallos (y el "no conectado", que se completa en el hilo de recarga) al principal
+            if (error == null) {
+                return result;
+            }
+            Throwable cause = error.getCause() != null ? error.getCause() : error;
+            getLogger().log(Level.WARNING, "No se pudieron migrar los datos JSON a MySQL; se mantiene el storage actual", cause);
+            return new StorageSwitch(false, 0);
+        }, asyncStorage.mainThread());
+    }
 
+    /**
+     * Resultado de {@link #reconnectStorage}.
+     *
+     * @param migratedPlayers jugadores cuyos datos del fallback JSON se pasaron a MySQL.
+     */
+    public record StorageSwitch(boolean switched, int migratedPlayers) {
     }
 
     // getters si los necesitas en otro sitio
@@ -54,7 +205,27 @@ public class PlayTimerPlugin extends JavaPlugin {
         return storageManager;
     }
 
+    public AsyncStorage getAsyncStorage() {
+        return asyncStorage;
+    }
+
     public ConfigManager getConfigManager() {
         return configManager;
     }
+
+    public AfkManager getAfkManager() {
+        return afkManager;
+    }
+
+    public HistoryService getHistoryService() {
+        return historyService;
+    }
+
+    public PlayerLookup getPlayerLookup() {
+        return playerLookup;
+    }
+
+    public Leaderboard getLeaderboard() {
+        return leaderboard;
+    }
 }
@@ -0,0 +1,159 @@
+package gc.grivyzom.playtimer.admin;
+
+import gc.grivyzom.playtimer.storage.AsyncStorage;
+import org.bukkit.command.CommandSender;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+
+/**
+ * <h1>BulkJobManager</h1>
+ * <p>
+ *     Ejecuta operaciones masivas de administración (reset del tiempo diario, bonificaciones, cambio de rango)
+ *     como trabajos en segundo plano sobre {@link AsyncStorage}. Cada trabajo se traduce en una única escritura
+ *     por conjuntos en el storage. Ninguno de esos datos se cachea en memoria para los jugadores conectados, así
+ *     que no hay caché que ajustar. Sólo se permite un trabajo a la vez.
+ * </p>
+ * <p>
+ *     Las operaciones que no se pueden deshacer ({@link BulkOperation#isDestructive()}) se preparan primero y sólo
+ *     se lanzan cuando el mismo emisor repite el código de confirmación antes de que caduque.
+ * </p>
+ */
+public class BulkJobManager {
+
+    /** Intervalo mínimo entre avisos de progreso al emisor. */
+    private static final long PROGRESS_INTERVAL_MS = 2000L;
+    /** Validez de un código de confirmación. */
+    public static final long CONFIRM_TIMEOUT_MS = 30_000L;
+
+    private final JavaPlugin plugin;
+    private final AsyncStorage storage;
+    private final AtomicInteger ids = new AtomicInteger();
+    private final AtomicReference<Job> running = new AtomicReference<>();
+    // Operaciones a la espera de confirmación, por emisor; sólo desde el hilo principal
+    private final Map<String, Pending> pending = new HashMap<>();
+
+    public BulkJobManager(JavaPlugin plugin, AsyncStorage storage) {
+        this.plugin = plugin;
+        this.storage = storage;
+    }
+
+    /**
+     * Guarda una operación destructiva a la espera de confirmación (sustituye a la anterior del mismo emisor).
+     *
+     * @return el código que hay que repetir con <code>/playtimer bulk confirm</code>.
+     */
+    public String prepare(CommandSender sender, BulkOperation operation, BulkTarget target) {
+        String code = Integer.toString(ThreadLocalRandom.current().nextInt(1000, 10000));
+        pending.put(sender.getName(), new Pending(operation, target, code,
+                System.currentTimeMillis() + CONFIRM_TIMEOUT_MS));
+        return code;
+    }
+
+    /**
+     * Retira la operación pendiente del emisor si el código coincide y no ha caducado.
+     *
+     * @return la operación confirmada, o <code>null</code> si no hay ninguna válida.
+     */
+    public Pending confirm(CommandSender sender, String code) {
+        Pending candidate = pending.get(sender.getName());
+        if (candidate == null || System.currentTimeMillis() > candidate.expiresAt()) {
+            pending.remove(sender.getName());
+            return null;
+        }
+        if (!candidate.code().equals(code)) {
+            return null;
+        }
+        pending.remove(sender.getName());
+        return candidate;
+    }
+
+    /**
+     * Lanza un trabajo. Llamar desde el hilo principal.
+     *
+     * @return <code>false</code> si ya hay otro trabajo en curso.
+     */
+    public boolean submit(CommandSender sender, BulkOperation operation, BulkTarget target) {
+        String description = operation.describe() + " para " + target.describe();
+        Job job = new Job(ids.incrementAndGet(), description, System.currentTimeMillis());
+        if (!running.compareAndSet(null, job)) {
+            return false;
+        }
+
+        sender.sendMessage("§eTrabajo #" + job.id + " iniciado: §7" + description);
+
+        storage.supply(s -> s.bulkUpdate(operation, target, (done, total) -> {
+            job.done = done;
+            job.total = total;
+            long now = System.currentTimeMillis();
+            if (done < total && now - job.lastReport >= PROGRESS_INTERVAL_MS) {
+                job.lastReport = now;
+                storage.mainThread().execute(() -> sender.sendMessage("§7Trabajo #" + job.id + ": " + done + "/" + total));
+            }
+        })).whenCompleteAsync((affected, error) -> {
+            running.set(null);
+            long elapsed = System.currentTimeMillis() - job.startedAt;
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                sender.sendMessage("§cTrabajo #" + job.id + " fallido tras " + elapsed + " ms: §7" + cause.getMessage());
+                plugin.getLogger().log(Level.WARNING, "Error en el trabajo masivo #" + job.id, cause);
+                return;
+            }
+            sender.sendMessage("§aTrabajo #" + job.id + " completado: §e" + affected + " §ajugadores en §e" + elapsed + " ms");
+            plugin.getLogger().info("Trabajo masivo #" + job.id + " (" + description + ") por " + sender.getName()
+                    + ": " + affected + " jugadores en " + elapsed + " ms");
+        }, storage.mainThread());
+        return true;
+    }
+
+    /** Operación preparada a la espera de su código de confirmación. */
+    public record Pending(BulkOperation operation, BulkTarget target, String code, long expiresAt) {
+    }
+
+    /** @return el trabajo en curso, o <code>null</code> si no hay ninguno. */
+    public Job current() {
+        return running.get();
+    }
+
+    /** Estado de un trabajo; el avance se escribe desde el hilo de storage. */
+    public static final class Job {
+        private final int id;
+        private final String description;
+        private final long startedAt;
+        private volatile int done;
+        private volatile int total;
+        private volatile long lastReport;
+
+        private Job(int id, String description, long startedAt) {
+            this.id = id;
+            this.description = description;
+            this.startedAt = startedAt;
+            this.lastReport = startedAt;
+        }
+
+        public int id() {
+            return id;
+        }
+
+        public String description() {
+            return description;
+        }
+
+        public long startedAt() {
+            return startedAt;
+        }
+
+        public int done() {
+            return done;
+        }
+
+        public int total() {
+            return total;
+        }
+    }
+}
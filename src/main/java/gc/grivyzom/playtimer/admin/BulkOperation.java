@@ -0,0 +1,68 @@
+package gc.grivyzom.playtimer.admin;
+
+import java.util.Locale;
+
+/**
+ * Operación masiva de administración: versión por conjuntos de las escrituras por jugador de
+ * {@link gc.grivyzom.playtimer.storage.DatabaseManager} (<code>resetPlayTime</code>, <code>addBonus</code> y
+ * <code>setRango</code>). No toca el tiempo total ni el historial.
+ *
+ * @param type      qué se modifica.
+ * @param seconds   segundos de la bonificación (sólo {@link Type#BONUS}).
+ * @param permanent bonificación permanente en lugar de diaria (sólo {@link Type#BONUS}).
+ * @param rank      rango nuevo en minúsculas (sólo {@link Type#RANK}).
+ */
+public record BulkOperation(Type type, long seconds, boolean permanent, String rank) {
+
+    public enum Type {
+        /** Pone a 0 el contador diario (<code>users.tiempo_jugado_hoy</code>) como el reset diario. */
+        RESET,
+        /** Concede una bonificación (fila en <code>bonuses</code>). */
+        BONUS,
+        /** Cambia el rango (<code>users.rango</code>). */
+        RANK
+    }
+
+    public static BulkOperation dailyReset() {
+        return new BulkOperation(Type.RESET, 0L, false, null);
+    }
+
+    public static BulkOperation bonus(long seconds, boolean permanent) {
+        return new BulkOperation(Type.BONUS, seconds, permanent, null);
+    }
+
+    public static BulkOperation rank(String rank) {
+        return new BulkOperation(Type.RANK, 0L, false, rank.toLowerCase(Locale.ROOT));
+    }
+
+    /** @return el valor de <code>bonuses.tipo</code> de la bonificación. */
+    public String bonusType() {
+        return permanent ? "permanente" : "diario";
+    }
+
+    /**
+     * @return <code>true</code> si la operación sobrescribe datos sin forma de deshacerla y debe confirmarse
+     *         (una bonificación se puede retirar borrando su fila).
+     */
+    public boolean isDestructive() {
+        return type != Type.BONUS;
+    }
+
+    /** @return descripción legible para mensajes. */
+    public String describe() {
+        return switch (type) {
+            case RESET -> "reset del tiempo diario";
+            case BONUS -> "bonificación " + bonusType() + " de " + seconds + "s";
+            case RANK -> "cambio de rango a " + rank;
+        };
+    }
+
+    /** @return el tipo con ese nombre, o <code>null</code> si no existe. */
+    public static Type parseType(String input) {
+        try {
+            return Type.valueOf(input.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+}
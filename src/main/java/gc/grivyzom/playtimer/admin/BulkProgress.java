@@ -0,0 +1,9 @@
+package gc.grivyzom.playtimer.admin;
+
+/**
+ * Recibe el avance de una operación masiva desde el hilo de storage.
+ */
+@FunctionalInterface
+public interface BulkProgress {
+    void update(int done, int total);
+}
@@ -0,0 +1,43 @@
+package gc.grivyzom.playtimer.admin;
+
+import java.util.Locale;
+
+/**
+ * Conjunto de jugadores afectados por una operación masiva: todos, o los de un rango
+ * (<code>users.rango</code>; con LuckPerms se sincroniza con el grupo principal en cada entrada).
+ *
+ * @param group rango en minúsculas, o <code>null</code> para todos los jugadores.
+ */
+public record BulkTarget(String group) {
+
+    public static BulkTarget all() {
+        return new BulkTarget(null);
+    }
+
+    public boolean isAll() {
+        return group == null;
+    }
+
+    /**
+     * Acepta <code>all</code>/<code>todos</code> y <code>group:&lt;rango&gt;</code>/<code>grupo:&lt;rango&gt;</code>.
+     *
+     * @return el objetivo, o <code>null</code> si el texto no es válido.
+     */
+    public static BulkTarget parse(String input) {
+        String text = input.toLowerCase(Locale.ROOT);
+        if (text.equals("all") || text.equals("todos")) {
+            return all();
+        }
+        for (String prefix : new String[]{"group:", "grupo:"}) {
+            if (text.startsWith(prefix) && text.length() > prefix.length()) {
+                return new BulkTarget(text.substring(prefix.length()));
+            }
+        }
+        return null;
+    }
+
+    /** @return descripción legible para mensajes. */
+    public String describe() {
+        return isAll() ? "todos los jugadores" : "rango " + group;
+    }
+}
@@ -0,0 +1,233 @@
+package gc.grivyzom.playtimer.afk;
+
+import gc.grivyzom.playtimer.config.ConfigManager;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.player.AsyncPlayerChatEvent;
+import org.bukkit.event.player.PlayerCommandPreprocessEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <h1>AfkManager</h1>
+ * <p>
+ *     Detecta jugadores inactivos (AFK) sin registrar un <code>PlayerMoveEvent</code>: en lugar de procesar cada
+ *     paquete de movimiento, una tarea periódica recorre a los jugadores conectados y compara su orientación
+ *     (yaw/pitch) con la de la muestra anterior. Chat, comandos e interacciones sólo actualizan un timestamp.
+ * </p>
+ * <p>
+ *     Sólo se tiene en cuenta la orientación y no la posición para que empujes pasivos (agua, pistones,
+ *     vehículos) no cuenten como actividad.
+ * </p>
+ * <p>
+ *     Mientras un jugador está AFK su tiempo no se acumula: el tiempo transcurrido desde que cruzó el umbral se
+ *     suma a un contador de inactividad que {@link #drainIdleMillis(UUID, long)} entrega al que contabiliza la sesión.
+ * </p>
+ */
+public class AfkManager implements Listener {
+
+    private final JavaPlugin plugin;
+    private volatile ConfigManager.AfkSettings settings;
+    private final Map<UUID, AfkState> states = new ConcurrentHashMap<>();
+    private BukkitTask task;
+
+    public AfkManager(JavaPlugin plugin, ConfigManager.AfkSettings settings) {
+        this.plugin = plugin;
+        this.settings = settings;
+    }
+
+    // ───────────────────────────────── CICLO DE VIDA ─────────────────────────────────
+
+    /** Programa la pasada periódica de muestreo (no hace nada si el sistema está desactivado). */
+    public void start() {
+        if (!settings.enabled()) {
+            return;
+        }
+        long period = Math.max(1, settings.checkIntervalSeconds()) * 20L;
+        task = plugin.getServer().getScheduler().runTaskTimer(plugin, this::sample, period, period);
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Aplica una configuración recargada. El umbral y los avisos se leen en cada pasada; si cambia el intervalo
+     * o se activa/desactiva el sistema se reprograma la tarea. Al desactivarlo nadie se queda marcado como AFK.
+     */
+    public void applySettings(ConfigManager.AfkSettings next) {
+        ConfigManager.AfkSettings previous = this.settings;
+        this.settings = next;
+        if (previous.enabled() == next.enabled() && previous.checkIntervalSeconds() == next.checkIntervalSeconds()) {
+            return;
+        }
+        stop();
+        if (!next.enabled()) {
+            long now = System.currentTimeMillis();
+            for (AfkState state : states.values()) {
+                synchronized (state) {
+                    if (state.afk) {
+                        state.idleMillis += Math.max(0L, now - state.afkSince);
+                        state.afk = false;
+                    }
+                    state.lastActivity = now;
+                }
+            }
+        }
+        start();
+    }
+
+    /** Empieza a seguir a un jugador recién conectado. */
+    public void track(Player player) {
+        states.put(player.getUniqueId(), new AfkState(player.getLocation(), System.currentTimeMillis()));
+    }
+
+    /** Deja de seguir a un jugador (llamar después de {@link #drainIdleMillis(UUID, long)} al salir). */
+    public void untrack(UUID player) {
+        states.remove(player);
+    }
+
+    // ───────────────────────────────── CONSULTAS ─────────────────────────────────
+
+    /** @return <code>true</code> si el jugador está marcado como AFK. Acceso O(1) desde cualquier hilo. */
+    public boolean isAfk(UUID player) {
+        AfkState state = states.get(player);
+        return state != null && state.afk;
+    }
+
+    /**
+     * Devuelve y pone a cero los milisegundos que el jugador ha pasado AFK desde la última llamada.
+     * Si sigue AFK, el tramo abierto se corta en <code>now</code> y se sigue contando desde ahí; si hubo actividad
+     * que {@link #sample()} aún no ha visto, el tramo termina en esa actividad y el jugador deja de estar AFK.
+     */
+    public long drainIdleMillis(UUID player, long now) {
+        AfkState state = states.get(player);
+        if (state == null) {
+            return 0L;
+        }
+        synchronized (state) {
+            long idle = state.idleMillis;
+            if (state.afk && state.lastActivity > state.afkSince) {
+                idle += state.lastActivity - state.afkSince;
+                state.afk = false;
+                state.returnPending = true;
+            } else if (state.afk) {
+                idle += Math.max(0L, now - state.afkSince);
+                state.afkSince = now;
+            }
+            state.idleMillis = 0L;
+            state.lastDrain = now;
+            return idle;
+        }
+    }
+
+    // ───────────────────────────────── ACTIVIDAD ─────────────────────────────────
+
+    /** Registra actividad del jugador. Puede llamarse desde cualquier hilo (p. ej. chat asíncrono). */
+    public void markActive(UUID player) {
+        AfkState state = states.get(player);
+        if (state != null) {
+            state.lastActivity = System.currentTimeMillis();
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onChat(AsyncPlayerChatEvent event) {
+        markActive(event.getPlayer().getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onCommand(PlayerCommandPreprocessEvent event) {
+        markActive(event.getPlayer().getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onInteract(PlayerInteractEvent event) {
+        // Placas de presión, tripwire y cultivos se activan sin que el jugador haga nada
+        if (event.getAction() == Action.PHYSICAL) {
+            return;
+        }
+        markActive(event.getPlayer().getUniqueId());
+    }
+
+    // ───────────────────────────────── MUESTREO ─────────────────────────────────
+
+    /** Pasada por lotes sobre todos los jugadores conectados (hilo principal). */
+    private void sample() {
+        ConfigManager.AfkSettings settings = this.settings;
+        long now = System.currentTimeMillis();
+        long threshold = settings.idleSeconds() * 1000L;
+
+        for (Player player : plugin.getServer().getOnlinePlayers()) {
+            AfkState state = states.get(player.getUniqueId());
+            if (state == null) {
+                continue;
+            }
+
+            Location loc = player.getLocation();
+            if (loc.getYaw() != state.yaw || loc.getPitch() != state.pitch) {
+                state.yaw = loc.getYaw();
+                state.pitch = loc.getPitch();
+                state.lastActivity = now;
+            }
+
+            synchronized (state) {
+                long lastActivity = state.lastActivity;
+                if (state.returnPending) {
+                    // La vuelta ya la contabilizó un drenaje; sólo falta avisar
+                    state.returnPending = false;
+                    if (settings.notifyPlayer()) {
+                        player.sendMessage("§aYa no estás AFK, tu tiempo de juego vuelve a contar.");
+                    }
+                }
+                if (state.afk && lastActivity > state.afkSince) {
+                    // Vuelve: sólo se descuenta hasta el momento real de la actividad
+                    state.idleMillis += lastActivity - state.afkSince;
+                    state.afk = false;
+                    if (settings.notifyPlayer()) {
+                        player.sendMessage("§aYa no estás AFK, tu tiempo de juego vuelve a contar.");
+                    }
+                } else if (!state.afk && now - lastActivity >= threshold) {
+                    // El tiempo hasta cruzar el umbral sí cuenta; a partir de ahí se pausa.
+                    // Nunca antes del último drenaje: ese tramo ya se contabilizó.
+                    state.afkSince = Math.max(lastActivity + threshold, state.lastDrain);
+                    state.afk = true;
+                    if (settings.notifyPlayer()) {
+                        player.sendMessage("§7Ahora estás AFK, tu tiempo de juego está en pausa.");
+                    }
+                }
+            }
+        }
+    }
+
+    /** Estado mutable por jugador; la orientación sólo se toca desde el hilo principal. */
+    private static final class AfkState {
+        private float yaw;
+        private float pitch;
+        private volatile long lastActivity;
+        private volatile boolean afk;
+        private long afkSince;
+        private long idleMillis;
+        private long lastDrain;
+        private boolean returnPending;
+
+        private AfkState(Location loc, long now) {
+            this.yaw = loc.getYaw();
+            this.pitch = loc.getPitch();
+            this.lastActivity = now;
+            this.lastDrain = now;
+        }
+    }
+}
@@ -1,25 +1,63 @@
 package gc.grivyzom.playtimer.commands;
 
-import gc.grivyzom.playtimer.storage.StorageManager;
+import gc.grivyzom.playtimer.admin.BulkJobManager;
+import gc.grivyzom.playtimer.admin.BulkOperation;
+import gc.grivyzom.playtimer.admin.BulkTarget;
+import gc.grivyzom.playtimer.config.ConfigReloader;
+import gc.grivyzom.playtimer.history.HistoryRange;
+import gc.grivyzom.playtimer.history.HistoryService;
+import gc.grivyzom.playtimer.lookup.PlayerLookup;
+import gc.grivyzom.playtimer.storage.AsyncStorage;
+import gc.grivyzom.playtimer.util.TimeFormatter;
 import org.bukkit.command.Command;
-import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabExecutor;
 import org.bukkit.entity.Player;
 
-import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
-public class PlayTimerCommand implements CommandExecutor {
+public class PlayTimerCommand implements TabExecutor {
 
-    private final StorageManager storage;
+    private final AsyncStorage storage;
+    private final HistoryService history;
+    private final PlayerLookup lookup;
+    private final BulkJobManager bulkJobs;
+    private final ConfigReloader reloader;
 
-    // Antes recibías PlayTimerPlugin; cámbialo a StorageManager
-    public PlayTimerCommand(StorageManager storage) {
+    public PlayTimerCommand(AsyncStorage storage, HistoryService history, PlayerLookup lookup,
+                            BulkJobManager bulkJobs, ConfigReloader reloader) {
         this.storage = storage;
+        this.history = history;
+        this.lookup = lookup;
+        this.bulkJobs = bulkJobs;
+        this.reloader = reloader;
     }
 
     @Override
     public boolean onCommand(CommandSender sender, Command cmd, String label, String[] args) {
+        if (args.length > 0 && args[0].equalsIgnoreCase("history")) {
+            handleHistory(sender, label, args);
+            return true;
+        }
+        if (args.length > 0 && args[0].equalsIgnoreCase("bulk")) {
+            handleBulk(sender, label, args);
+            return true;
+        }
+        if (args.length > 0 && args[0].equalsIgnoreCase("reload")) {
+            if (!sender.hasPermission("playtimer.reload")) {
+                sender.sendMessage("§cNo tienes permiso para usar este comando.");
+                return true;
+            }
+            reloader.reload(sender);
+            return true;
+        }
+
         if (!(sender instanceof Player)) {
             sender.sendMessage("§cSolo jugadores pueden usar este comando.");
             return true;
@@ -27,13 +65,211 @@ public class PlayTimerCommand implements CommandExecutor {
 
         Player p = (Player) sender;
         UUID id = p.getUniqueId();
-        try {
-            long tiempo = storage.getPlayTime(id);
+        storage.supply(s -> s.getPlayTime(id)).whenCompleteAsync((tiempo, error) -> {
+            if (error != null) {
+                p.sendMessage("§cError al obtener tu tiempo de juego. Intenta más tarde.");
+                error.printStackTrace();
+                return;
+            }
             p.sendMessage("§aTu tiempo de juego acumulado es: §e" + tiempo + " segundos");
-        } catch (SQLException e) {
-            p.sendMessage("§cError al obtener tu tiempo de juego. Intenta más tarde.");
-            e.printStackTrace();
-        }
+        }, storage.mainThread());
         return true;
     }
+
+    // /playtimer history <jugador> [rango]
+    private void handleHistory(CommandSender sender, String label, String[] args) {
+        if (!sender.hasPermission("playtimer.history")) {
+            sender.sendMessage("§cNo tienes permiso para usar este comando.");
+            return;
+        }
+        if (args.length < 2) {
+            sender.sendMessage("§cUso: /" + label + " history <jugador> [24h|7d|4w|6m|hoy|semana|mes]");
+            return;
+        }
+
+        HistoryRange range = HistoryRange.DEFAULT;
+        if (args.length >= 3) {
+            range = HistoryRange.parse(args[2]);
+            if (range == null) {
+                sender.sendMessage("§cRango no válido: §7" + args[2] + " §c(ej: 24h, 7d, 4w, 6m).");
+                return;
+            }
+        }
+
+        HistoryRange query = range;
+        lookup.resolve(args[1]).thenCompose(target -> {
+            if (target == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return history.query(target.uuid(), query)
+                    .thenApply(buckets -> Map.entry(target, buckets));
+        }).whenCompleteAsync((result, error) -> {
+            if (error != null) {
+                sender.sendMessage("§cError al obtener el historial. Intenta más tarde.");
+                error.printStackTrace();
+                return;
+            }
+            if (result == null) {
+                sender.sendMessage("§cEl jugador §7" + args[1] + " §cnunca ha entrado al servidor.");
+                return;
+            }
+            sendHistory(sender, result.getKey().name(), query, result.getValue());
+        }, storage.mainThread());
+    }
+
+    // /playtimer bulk <reset|bonus|rank> <all|group:rango> [...] · bulk confirm <código> · bulk status
+    private void handleBulk(CommandSender sender, String label, String[] args) {
+        if (!sender.hasPermission("playtimer.admin")) {
+            sender.sendMessage("§cNo tienes permiso para usar este comando.");
+            return;
+        }
+        if (args.length == 2 && args[1].equalsIgnoreCase("status")) {
+            BulkJobManager.Job job = bulkJobs.current();
+            if (job == null) {
+                sender.sendMessage("§7No hay ningún trabajo en curso.");
+            } else {
+                sender.sendMessage("§eTrabajo #" + job.id() + " §7(" + job.description() + "): " + job.done() + "/"
+                        + job.total() + " en " + (System.currentTimeMillis() - job.startedAt()) + " ms");
+            }
+            return;
+        }
+        if (args.length == 3 && args[1].equalsIgnoreCase("confirm")) {
+            BulkJobManager.Pending confirmed = bulkJobs.confirm(sender, args[2]);
+            if (confirmed == null) {
+                sender.sendMessage("§cNo tienes ninguna operación pendiente con ese código (o ya caducó).");
+            } else if (!bulkJobs.submit(sender, confirmed.operation(), confirmed.target())) {
+                sender.sendMessage("§cYa hay un trabajo en curso; consulta su avance con /" + label + " bulk status.");
+            }
+            return;
+        }
+
+        BulkOperation.Type type = args.length >= 2 ? BulkOperation.parseType(args[1]) : null;
+        BulkTarget target = args.length >= 3 ? BulkTarget.parse(args[2]) : null;
+        if (type == null || target == null) {
+            sendBulkUsage(sender, label);
+            return;
+        }
+
+        BulkOperation operation;
+        switch (type) {
+            case RESET -> operation = BulkOperation.dailyReset();
+            case BONUS -> {
+                if (args.length < 4) {
+                    sendBulkUsage(sender, label);
+                    return;
+                }
+                long seconds;
+                try {
+                    seconds = Long.parseLong(args[3]);
+                } catch (NumberFormatException ex) {
+                    sender.sendMessage("§cCantidad de segundos no válida: §7" + args[3]);
+                    return;
+                }
+                if (seconds <= 0) {
+                    sender.sendMessage("§cLa bonificación debe ser de al menos 1 segundo.");
+                    return;
+                }
+                String kind = args.length >= 5 ? args[4].toLowerCase() : "diario";
+                if (!kind.equals("diario") && !kind.equals("permanente")) {
+                    sender.sendMessage("§cTipo de bonificación no válido: §7" + args[4] + " §c(diario o permanente)");
+                    return;
+                }
+                operation = BulkOperation.bonus(seconds, kind.equals("permanente"));
+            }
+            case RANK -> {
+                if (args.length < 4) {
+                    sendBulkUsage(sender, label);
+                    return;
+                }
+                operation = BulkOperation.rank(args[3]);
+                if (sender.getServer().getPluginManager().isPluginEnabled("LuckPerms")) {
+                    sender.sendMessage("§eLuckPerms está activo: el rango de cada jugador se vuelve a sincronizar "
+                            + "con su grupo principal al entrar.");
+                }
+            }
+            default -> throw new IllegalStateException();
+        }
+
+        if (operation.isDestructive()) {
+            String code = bulkJobs.prepare(sender, operation, target);
+            sender.sendMessage("§eVas a aplicar §6" + operation.describe() + " §epara §6" + target.describe()
+                    + "§e. No se puede deshacer.");
+            sender.sendMessage("§eConfírmalo en " + BulkJobManager.CONFIRM_TIMEOUT_MS / 1000 + " s con §6/" + label
+                    + " bulk confirm " + code);
+            return;
+        }
+        if (!bulkJobs.submit(sender, operation, target)) {
+            sender.sendMessage("§cYa hay un trabajo en curso; consulta su avance con /" + label + " bulk status.");
+        }
+    }
+
+    private void sendBulkUsage(CommandSender sender, String label) {
+        sender.sendMessage("§cUso: /" + label + " bulk reset <all|group:rango>");
+        sender.sendMessage("§cUso: /" + label + " bulk bonus <all|group:rango> <segundos> [diario|permanente]");
+        sender.sendMessage("§cUso: /" + label + " bulk rank <all|group:rango> <rango>");
+        sender.sendMessage("§cUso: /" + label + " bulk <confirm <código>|status>");
+    }
+
+    private void sendHistory(CommandSender sender, String name, HistoryRange range, SortedMap<Long, Long> buckets) {
+        sender.sendMessage("§6Historial de §e" + name + " §7("
+                + range.granularity().describeLast(range.count()) + "):");
+        if (buckets.isEmpty()) {
+            sender.sendMessage("§7Sin tiempo registrado en ese rango.");
+            return;
+        }
+
+        long total = 0L;
+        Map.Entry<Long, Long> peak = null;
+        for (Map.Entry<Long, Long> bucket : buckets.entrySet()) {
+            total += bucket.getValue();
+            if (peak == null || bucket.getValue() > peak.getValue()) {
+                peak = bucket;
+            }
+            sender.sendMessage("§7" + range.granularity().label(bucket.getKey()) + ": §e"
+                    + TimeFormatter.format(bucket.getValue()));
+        }
+        sender.sendMessage("§aTotal: §e" + TimeFormatter.format(total));
+        if (buckets.size() > 1) {
+            sender.sendMessage("§aPico: §e" + range.granularity().label(peak.getKey())
+                    + " §7(" + TimeFormatter.format(peak.getValue()) + ")");
+        }
+    }
+
+    @Override
+    public List<String> onTabComplete(CommandSender sender, Command cmd, String label, String[] args) {
+        if (args.length == 1) {
+            List<String> result = new ArrayList<>();
+            if ("history".startsWith(args[0].toLowerCase()) && sender.hasPermission("playtimer.history")) {
+                result.add("history");
+            }
+            if ("bulk".startsWith(args[0].toLowerCase()) && sender.hasPermission("playtimer.admin")) {
+                result.add("bulk");
+            }
+            if ("reload".startsWith(args[0].toLowerCase()) && sender.hasPermission("playtimer.reload")) {
+                result.add("reload");
+            }
+            return result;
+        }
+        if (args[0].equalsIgnoreCase("bulk") && sender.hasPermission("playtimer.admin")) {
+            if (args.length == 2) {
+                return List.of("reset", "bonus", "rank", "confirm", "status");
+            }
+            if (args.length == 3 && BulkOperation.parseType(args[1]) != null) {
+                return List.of("all", "group:");
+            }
+            if (args.length == 5 && args[1].equalsIgnoreCase("bonus")) {
+                return List.of("diario", "permanente");
+            }
+            return Collections.emptyList();
+        }
+        if (args[0].equalsIgnoreCase("history") && sender.hasPermission("playtimer.history")) {
+            if (args.length == 2) {
+                return lookup.complete(args[1], 50);
+            }
+            if (args.length == 3) {
+                return List.of("24h", "7d", "4w", "6m", "hoy", "semana", "mes");
+            }
+        }
+        return Collections.emptyList();
+    }
 }
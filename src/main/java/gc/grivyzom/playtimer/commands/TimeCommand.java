@@ -1,21 +1,28 @@
 package gc.grivyzom.playtimer.commands;
 
-import gc.grivyzom.playtimer.storage.StorageManager;
+import gc.grivyzom.playtimer.lookup.PlayerLookup;
+import gc.grivyzom.playtimer.storage.AsyncStorage;
+import gc.grivyzom.playtimer.storage.PlayerProfile;
 import org.bukkit.command.Command;
-import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabExecutor;
 import org.bukkit.entity.Player;
 
-import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
-public class TimeCommand implements CommandExecutor {
+public class TimeCommand implements TabExecutor {
 
-    private final StorageManager storage;
+    private final AsyncStorage storage;
+    private final PlayerLookup lookup;
 
-    // Ahora sólo recibe StorageManager
-    public TimeCommand(StorageManager storage) {
+    // Las consultas se hacen fuera del hilo principal
+    public TimeCommand(AsyncStorage storage, PlayerLookup lookup) {
         this.storage = storage;
+        this.lookup = lookup;
     }
 
     @Override
@@ -24,22 +31,61 @@ public class TimeCommand implements CommandExecutor {
                              String label,
                              String[] args) {
 
+        if (args.length > 0) {
+            showOther(sender, args[0]);
+            return true;
+        }
+
         if (!(sender instanceof Player)) {
-            sender.sendMessage("§cSolo jugadores pueden usar este comando.");
+            sender.sendMessage("§cUso desde consola: /" + label + " <jugador>");
             return true;
         }
 
         Player player = (Player) sender;
         UUID uuid = player.getUniqueId();
 
-        try {
-            long tiempo = storage.getPlayTime(uuid);
+        storage.supply(s -> s.getPlayTime(uuid)).whenCompleteAsync((tiempo, error) -> {
+            if (error != null) {
+                player.sendMessage("§cError al obtener tu tiempo de juego. Intenta más tarde.");
+                error.printStackTrace();
+                return;
+            }
             player.sendMessage("§aTu tiempo de juego acumulado es: §e" + tiempo + " segundos");
-        } catch (SQLException e) {
-            player.sendMessage("§cError al obtener tu tiempo de juego. Intenta más tarde.");
-            e.printStackTrace();
-        }
+        }, storage.mainThread());
 
         return true;
     }
+
+    // /playtime <jugador>: funciona con jugadores desconectados y desde consola
+    private void showOther(CommandSender sender, String name) {
+        if (!sender.hasPermission("playtimer.others")) {
+            sender.sendMessage("§cNo tienes permiso para ver el tiempo de otros jugadores.");
+            return;
+        }
+
+        lookup.resolve(name).thenCompose(profile -> profile == null
+                ? CompletableFuture.<Map.Entry<PlayerProfile, Long>>completedFuture(null)
+                : storage.supply(s -> Map.entry(profile, s.getPlayTime(profile.uuid())))
+        ).whenCompleteAsync((result, error) -> {
+            if (error != null) {
+                sender.sendMessage("§cError al obtener el tiempo de juego. Intenta más tarde.");
+                error.printStackTrace();
+                return;
+            }
+            if (result == null) {
+                sender.sendMessage("§cEl jugador §7" + name + " §cnunca ha entrado al servidor.");
+                return;
+            }
+            sender.sendMessage("§aTiempo de juego acumulado de §e" + result.getKey().name() + "§a: §e"
+                    + result.getValue() + " segundos");
+        }, storage.mainThread());
+    }
+
+    @Override
+    public List<String> onTabComplete(CommandSender sender, Command command, String label, String[] args) {
+        if (args.length == 1 && sender.hasPermission("playtimer.others")) {
+            return lookup.complete(args[0], 50);
+        }
+        return Collections.emptyList();
+    }
 }
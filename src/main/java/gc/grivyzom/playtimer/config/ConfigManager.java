@@ -1,11 +1,21 @@
 package gc.grivyzom.playtimer.config;
 
 import gc.grivyzom.playtimer.PlayTimerPlugin;
+import org.bukkit.boss.BarColor;
+import org.bukkit.boss.BarStyle;
 import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
 
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
 import java.util.*;
-import java.util.logging.Level;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 /**
  * <h1>ConfigManager</h1>
@@ -17,8 +27,9 @@ import java.util.logging.Level;
  * <p>
  *     Diseñada para ser:
  *     <ul>
- *         <li><strong>Eficiente</strong>: acceso en O(1) a los valores una vez cargados.</li>
- *         <li><strong>Thread-safe</strong>: el campo {@link #config} es <code>volatile</code> para permitir
+ *         <li><strong>Eficiente</strong>: cada sección se interpreta una sola vez al cargar y se guarda
+ *             precalculada en un {@link RuntimeSettings}; los getters son accesos O(1).</li>
+ *         <li><strong>Thread-safe</strong>: el campo {@link #runtime} es <code>volatile</code> para permitir
  *             hot-reload sin necesidad de sincronizar a los hilos lectores (lo que evita <i>bottlenecks</i> en eventos).</li>
  *         <li><strong>Escalable</strong>: nuevas secciones o parámetros se añaden sin cambiar el API externo,
  *             siguiendo el principio Open/Closed.</li>
@@ -30,7 +41,8 @@ import java.util.logging.Level;
  *         <li>Las sub-configuraciones se exponen como <strong>records inmutables</strong> para mayor seguridad y
  *             legibilidad en el resto del código.</li>
  *         <li>Se proveen <i>defaults</i> razonables para que el plugin funcione incluso con YAML incompleto.</li>
- *         <li>Los errores de formato se reportan con {@link java.util.logging.Logger} para facilitar debugging.</li>
+ *         <li>Los valores inválidos se sustituyen por su default y se reportan como avisos con
+ *             {@link java.util.logging.Logger} (o al emisor de <code>/playtimer reload</code>).</li>
  *     </ol>
  * </p>
  */
@@ -46,6 +58,12 @@ public class ConfigManager {
      */
     private volatile FileConfiguration config;
 
+    /**
+     * Estructuras precalculadas a partir de {@link #config}. Se sustituyen de una sola vez en cada recarga, por lo
+     * que un lector nunca ve secciones de dos versiones distintas del fichero.
+     */
+    private volatile RuntimeSettings runtime;
+
     // ───────────────────────────────── CONSTRUCTOR ─────────────────────────────────
 
     /**
@@ -59,37 +77,106 @@ public class ConfigManager {
         // Genera el YAML por defecto si es la primera vez que se ejecuta el plugin
         plugin.saveDefaultConfig();
         this.config = plugin.getConfig();
+        this.runtime = parse(config, this::logWarning);
     }
 
     // ───────────────────────────────── CICLO DE VIDA ─────────────────────────────────
 
     /**
-     * Recarga el fichero YAML desde disco.
+     * Recarga el fichero YAML desde disco de forma síncrona.
      * Llama a {@link org.bukkit.plugin.java.JavaPlugin#reloadConfig()} que construye un nuevo objeto
-     * {@link FileConfiguration}; acto seguido se asigna al campo <code>volatile</code> para sustituir la referencia
-     * anterior de forma atómica.
+     * {@link FileConfiguration}; acto seguido se recalcula el {@link RuntimeSettings} y ambos se asignan a sus
+     * campos <code>volatile</code> para sustituir las referencias anteriores de forma atómica.
      */
     public void reload() {
         plugin.reloadConfig();
-        this.config = plugin.getConfig();
+        FileConfiguration fresh = plugin.getConfig();
+        RuntimeSettings settings = parse(fresh, this::logWarning);
+        this.config = fresh;
+        this.runtime = settings;
         plugin.getLogger().info("[PlayTimer] Configuración recargada correctamente.");
     }
 
+    /**
+     * Lee, interpreta y valida <code>config.yml</code> fuera del hilo principal, <strong>sin</strong> aplicarlo.
+     * El futuro falla si el YAML no se puede leer o tiene errores de sintaxis; los valores inválidos no lo hacen
+     * fallar sino que se sustituyen por su default y se devuelven como avisos.
+     *
+     * @param executor hilo en el que se hace la lectura (no el hilo principal).
+     */
+    public CompletableFuture<LoadedConfig> loadAsync(Executor executor) {
+        File file = new File(plugin.getDataFolder(), "config.yml");
+        return CompletableFuture.supplyAsync(() -> {
+            YamlConfiguration yaml = new YamlConfiguration();
+            try {
+                yaml.load(file);
+            } catch (IOException | InvalidConfigurationException e) {
+                throw new CompletionException(e);
+            }
+            List<String> warnings = new ArrayList<>();
+            return new LoadedConfig(yaml, parse(yaml, warnings::add), List.copyOf(warnings));
+        }, executor);
+    }
+
+    /**
+     * Sustituye la configuración activa por una cargada con {@link #loadAsync(Executor)}. Llamar desde el hilo principal.
+     *
+     * @return las estructuras que estaban activas hasta ahora, para que el llamador compare qué cambió.
+     */
+    public RuntimeSettings apply(LoadedConfig loaded) {
+        RuntimeSettings previous = this.runtime;
+        this.config = loaded.config();
+        this.runtime = loaded.settings();
+        return previous;
+    }
+
+    /** @return Instantánea completa de la configuración activa. */
+    public RuntimeSettings getRuntime() {
+        return runtime;
+    }
+
+    private void logWarning(String warning) {
+        plugin.getLogger().warning("[PlayTimer] " + warning);
+    }
+
+    /** Interpreta todas las secciones en una instantánea inmutable. */
+    private RuntimeSettings parse(FileConfiguration cfg, WarningSink warnings) {
+        return new RuntimeSettings(
+                parseGeneral(cfg, warnings),
+                parseDatabase(cfg, warnings),
+                parseLimits(cfg, warnings),
+                parseBonuses(cfg),
+                parseDisplay(cfg, warnings),
+                parseNotifications(cfg, warnings),
+                parseWorldLimits(cfg, warnings),
+                parseAfk(cfg, warnings),
+                parseLookup(cfg, warnings),
+                parseStartup(cfg, warnings),
+                parseHistory(cfg, warnings)
+        );
+    }
+
+    /** Destino de los avisos de validación (log al arrancar, lista al recargar). */
+    @FunctionalInterface
+    private interface WarningSink {
+        void add(String warning);
+    }
+
     // ───────────────────────────────── SECCIÓN: GENERAL ─────────────────────────────────
 
     /** @return <code>true</code> si se debe notificar al jugador cuando hay nueva versión disponible. */
     public boolean isUpdateNotifyEnabled() {
-        return config.getBoolean("general.notify_update", true);
+        return runtime.general().notifyUpdate();
     }
 
     /** @return <code>true</code> si se muestra un mensaje resumen al entrar al servidor. */
     public boolean isInfoMessageOnJoin() {
-        return config.getBoolean("general.info_message_on_join", true);
+        return runtime.general().infoMessageOnJoin();
     }
 
     /** @return Cada cuántos minutos se guardan los datos en BD de forma automática. */
     public int getAutoSaveMinutes() {
-        return config.getInt("general.auto_save_minutes", 5);
+        return runtime.general().autoSaveMinutes();
     }
 
     /**
@@ -97,7 +184,28 @@ public class ConfigManager {
      * Formato HH:mm (sin timezone).
      */
     public String getDailyResetTime() {
-        return config.getString("general.daily_reset", "04:00");
+        return runtime.general().dailyReset();
+    }
+
+    private GeneralSettings parseGeneral(FileConfiguration cfg, WarningSink warnings) {
+        int autoSave = cfg.getInt("general.auto_save_minutes", 5);
+        if (autoSave < 1) {
+            warnings.add("general.auto_save_minutes debe ser >= 1 (" + autoSave + "), usando 5.");
+            autoSave = 5;
+        }
+        String dailyReset = cfg.getString("general.daily_reset", "04:00");
+        try {
+            LocalTime.parse(dailyReset);
+        } catch (DateTimeParseException ex) {
+            warnings.add("general.daily_reset no tiene formato HH:mm ('" + dailyReset + "'), usando 04:00.");
+            dailyReset = "04:00";
+        }
+        return new GeneralSettings(
+                cfg.getBoolean("general.notify_update", true),
+                cfg.getBoolean("general.info_message_on_join", true),
+                autoSave,
+                dailyReset
+        );
     }
 
     // ───────────────────────────────── SECCIÓN: DATABASE ─────────────────────────────────
@@ -106,13 +214,21 @@ public class ConfigManager {
      * @return Objeto con la configuración para la conexión a la base de datos.
      */
     public DatabaseSettings getDatabaseSettings() {
-        ConfigurationSection section = config.getConfigurationSection("database");
+        return runtime.database();
+    }
+
+    private DatabaseSettings parseDatabase(FileConfiguration cfg, WarningSink warnings) {
+        ConfigurationSection section = cfg.getConfigurationSection("database");
         if (section == null) {
-            plugin.getLogger().severe("[PlayTimer] Sección 'database' faltante en config.yml");
+            warnings.add("Sección 'database' faltante en config.yml");
             return DatabaseSettings.defaults();
         }
+        String type = section.getString("type", "mysql");
+        if (!type.equalsIgnoreCase("mysql") && !type.equalsIgnoreCase("mariadb")) {
+            warnings.add("Tipo de base de datos no soportado: " + type + ", se usará MySQL.");
+        }
         return new DatabaseSettings(
-                section.getString("type", "mysql"),
+                type,
                 section.getString("host", "localhost"),
                 section.getInt("port", 3306),
                 section.getString("name", "playtimer_db"),
@@ -127,9 +243,13 @@ public class ConfigManager {
      * @return Límites de tiempo permitidos por grupo de permisos.
      */
     public LimitsSettings getLimitsSettings() {
-        ConfigurationSection limitsSec = config.getConfigurationSection("limits");
+        return runtime.limits();
+    }
+
+    private LimitsSettings parseLimits(FileConfiguration cfg, WarningSink warnings) {
+        ConfigurationSection limitsSec = cfg.getConfigurationSection("limits");
         if (limitsSec == null) {
-            plugin.getLogger().severe("[PlayTimer] Sección 'limits' faltante en config.yml");
+            warnings.add("Sección 'limits' faltante en config.yml");
             return LimitsSettings.empty();
         }
 
@@ -139,12 +259,16 @@ public class ConfigManager {
         if (groups != null) {
             for (String rango : groups.getKeys(false)) {
                 int seconds = groups.getInt(rango, 0);
+                if (seconds < 0) {
+                    warnings.add("Límite negativo para el rango '" + rango + "', se trata como ilimitado.");
+                    seconds = 0;
+                }
                 groupLimits.put(rango.toLowerCase(), seconds);
             }
         }
 
         String bypassPermission = limitsSec.getString("bypass_permission", "playtimer.bypass");
-        return new LimitsSettings(groupLimits, bypassPermission);
+        return new LimitsSettings(Map.copyOf(groupLimits), bypassPermission);
     }
 
     // ───────────────────────────────── SECCIÓN: BONUSES ─────────────────────────────────
@@ -153,7 +277,11 @@ public class ConfigManager {
      * @return Configuración de bonificaciones de tiempo extra.
      */
     public BonusSettings getBonusSettings() {
-        ConfigurationSection bonusSec = config.getConfigurationSection("bonuses");
+        return runtime.bonuses();
+    }
+
+    private BonusSettings parseBonuses(FileConfiguration cfg) {
+        ConfigurationSection bonusSec = cfg.getConfigurationSection("bonuses");
         if (bonusSec == null) {
             return BonusSettings.defaults();
         }
@@ -169,7 +297,11 @@ public class ConfigManager {
 
     /** @return Configuración visual de cómo se muestra la información al jugador. */
     public DisplaySettings getDisplaySettings() {
-        ConfigurationSection displaySec = config.getConfigurationSection("display");
+        return runtime.display();
+    }
+
+    private DisplaySettings parseDisplay(FileConfiguration cfg, WarningSink warnings) {
+        ConfigurationSection displaySec = cfg.getConfigurationSection("display");
         if (displaySec == null) {
             return DisplaySettings.defaults();
         }
@@ -180,9 +312,21 @@ public class ConfigManager {
         ConfigurationSection bossBarSec = displaySec.getConfigurationSection("boss_bar");
         BossBarSettings bossBar = BossBarSettings.disabled();
         if (bossBarSec != null && bossBarSec.getBoolean("enabled", false)) {
-            bossBar = new BossBarSettings(true,
-                    bossBarSec.getString("color", "RED"),
-                    bossBarSec.getString("style", "SEGMENTED_10"));
+            String color = bossBarSec.getString("color", "RED").toUpperCase(Locale.ROOT);
+            String style = bossBarSec.getString("style", "SEGMENTED_10").toUpperCase(Locale.ROOT);
+            try {
+                BarColor.valueOf(color);
+            } catch (IllegalArgumentException ex) {
+                warnings.add("display.boss_bar.color no válido ('" + color + "'), usando RED.");
+                color = "RED";
+            }
+            try {
+                BarStyle.valueOf(style);
+            } catch (IllegalArgumentException ex) {
+                warnings.add("display.boss_bar.style no válido ('" + style + "'), usando SEGMENTED_10.");
+                style = "SEGMENTED_10";
+            }
+            bossBar = new BossBarSettings(true, color, style);
         }
         return new DisplaySettings(actionBar, bossBar);
     }
@@ -192,25 +336,34 @@ public class ConfigManager {
     /**
      * Mapa con las notificaciones que se deben enviar cuando al jugador le queden X segundos.
      *
-     * @return key = segundos restantes, value = lista de líneas del mensaje (incluyendo códigos de color).
+     * @return key = segundos restantes (ordenado de mayor a menor), value = lista de líneas del mensaje
+     *         (incluyendo códigos de color). Inmutable.
      */
-    public Map<Integer, List<String>> getNotificationMessages() {
-        Map<Integer, List<String>> map = new HashMap<>();
-        ConfigurationSection timesSec = config.getConfigurationSection("notifications.times");
+    public NavigableMap<Integer, List<String>> getNotificationMessages() {
+        return runtime.notifications();
+    }
+
+    private NavigableMap<Integer, List<String>> parseNotifications(FileConfiguration cfg, WarningSink warnings) {
+        NavigableMap<Integer, List<String>> map = new TreeMap<>(Comparator.reverseOrder());
+        ConfigurationSection timesSec = cfg.getConfigurationSection("notifications.times");
         if (timesSec == null) {
-            return Collections.emptyMap();
+            return Collections.emptyNavigableMap();
         }
 
         for (String key : timesSec.getKeys(false)) {
             try {
                 int secondsLeft = Integer.parseInt(key);
+                if (secondsLeft <= 0) {
+                    warnings.add("Clave de notificación no positiva ignorada: '" + key + "'");
+                    continue;
+                }
                 List<String> lines = timesSec.getStringList(key);
-                map.put(secondsLeft, lines);
+                map.put(secondsLeft, List.copyOf(lines));
             } catch (NumberFormatException ex) {
-                plugin.getLogger().log(Level.WARNING, "[PlayTimer] Clave de notificación no numérica: '" + key + "'");
+                warnings.add("Clave de notificación no numérica: '" + key + "'");
             }
         }
-        return map;
+        return Collections.unmodifiableNavigableMap(map);
     }
 
     // ───────────────────────────────── SECCIÓN: WORLD LIMITS ─────────────────────────────────
@@ -219,18 +372,157 @@ public class ConfigManager {
      * @return Configuración de restricción de tiempo por mundo (whitelist / blacklist).
      */
     public WorldLimitSettings getWorldLimitSettings() {
-        ConfigurationSection worldSec = config.getConfigurationSection("world_limits");
+        return runtime.worldLimits();
+    }
+
+    private WorldLimitSettings parseWorldLimits(FileConfiguration cfg, WarningSink warnings) {
+        ConfigurationSection worldSec = cfg.getConfigurationSection("world_limits");
         if (worldSec == null) {
             return WorldLimitSettings.disabled();
         }
         boolean enabled = worldSec.getBoolean("enabled", false);
         String mode = worldSec.getString("mode", "whitelist").toLowerCase();
-        List<String> worlds = worldSec.getStringList("worlds");
+        if (!mode.equals("whitelist") && !mode.equals("blacklist")) {
+            warnings.add("world_limits.mode desconocido ('" + mode + "'), no se aplicará restricción por mundo.");
+        }
+        Set<String> worlds = Set.copyOf(worldSec.getStringList("worlds"));
         return new WorldLimitSettings(enabled, mode, worlds);
     }
 
+    // ───────────────────────────────── SECCIÓN: AFK ─────────────────────────────────
+
+    /**
+     * @return Configuración de detección de inactividad (AFK).
+     */
+    public AfkSettings getAfkSettings() {
+        return runtime.afk();
+    }
+
+    private AfkSettings parseAfk(FileConfiguration cfg, WarningSink warnings) {
+        ConfigurationSection afkSec = cfg.getConfigurationSection("afk");
+        if (afkSec == null) {
+            return AfkSettings.defaults();
+        }
+        int idle = afkSec.getInt("idle_seconds", 300);
+        if (idle < 1) {
+            // Para desactivar la detección está afk.enabled; 0 no significa "desactivado"
+            warnings.add("afk.idle_seconds debe ser >= 1 (" + idle + "), usando 300. Usa afk.enabled: false para desactivarlo.");
+            idle = 300;
+        }
+        int interval = afkSec.getInt("check_interval_seconds", 5);
+        if (interval < 1) {
+            warnings.add("afk.check_interval_seconds debe ser >= 1 (" + interval + "), usando 5.");
+            interval = 5;
+        }
+        return new AfkSettings(
+                afkSec.getBoolean("enabled", true),
+                idle,
+                interval,
+                afkSec.getBoolean("notify", true)
+        );
+    }
+
+    // ───────────────────────────────── SECCIÓN: LOOKUP ─────────────────────────────────
+
+    /**
+     * @return Configuración del índice local nombre → UUID usado para buscar jugadores desconectados.
+     */
+    public LookupSettings getLookupSettings() {
+        return runtime.lookup();
+    }
+
+    private LookupSettings parseLookup(FileConfiguration cfg, WarningSink warnings) {
+        ConfigurationSection lookupSec = cfg.getConfigurationSection("lookup");
+        if (lookupSec == null) {
+            return LookupSettings.defaults();
+        }
+        int cacheSize = lookupSec.getInt("cache_size", 5000);
+        if (cacheSize < 1) {
+            warnings.add("lookup.cache_size debe ser >= 1 (" + cacheSize + "), usando 5000.");
+            cacheSize = 5000;
+        }
+        return new LookupSettings(cacheSize, Math.max(0, lookupSec.getInt("warmup_days", 30)));
+    }
+
+    // ───────────────────────────────── SECCIÓN: STARTUP ─────────────────────────────────
+
+    /**
+     * @return Espera máxima de los logins mientras se abre el storage y tamaño del ranking precargado.
+     */
+    public StartupSettings getStartupSettings() {
+        return runtime.startup();
+    }
+
+    private StartupSettings parseStartup(FileConfiguration cfg, WarningSink warnings) {
+        ConfigurationSection startupSec = cfg.getConfigurationSection("startup");
+        if (startupSec == null) {
+            return StartupSettings.defaults();
+        }
+        int loginWait = startupSec.getInt("login_wait_seconds", 10);
+        if (loginWait < 0) {
+            warnings.add("startup.login_wait_seconds no puede ser negativo (" + loginWait + "), usando 10.");
+            loginWait = 10;
+        }
+        int topPlayers = startupSec.getInt("top_players", 10);
+        if (topPlayers < 0) {
+            warnings.add("startup.top_players no puede ser negativo (" + topPlayers + "), usando 10.");
+            topPlayers = 10;
+        }
+        return new StartupSettings(loginWait, topPlayers);
+    }
+
+    // ───────────────────────────────── SECCIÓN: HISTORY ─────────────────────────────────
+
+    /**
+     * @return Retención de los buckets por hora del historial de tiempo jugado.
+     */
+    public HistorySettings getHistorySettings() {
+        return runtime.history();
+    }
+
+    private HistorySettings parseHistory(FileConfiguration cfg, WarningSink warnings) {
+        ConfigurationSection historySec = cfg.getConfigurationSection("history");
+        if (historySec == null) {
+            return HistorySettings.defaults();
+        }
+        int hourlyDays = historySec.getInt("hourly_retention_days", 7);
+        if (hourlyDays < 1) {
+            warnings.add("history.hourly_retention_days debe ser >= 1 (" + hourlyDays + "), usando 7.");
+            hourlyDays = 7;
+        }
+        return new HistorySettings(hourlyDays);
+    }
+
     // ───────────────────────────────── RECORDS AUXILIARES ─────────────────────────────────
 
+    /**
+     * Todas las secciones ya interpretadas. Es la unidad que se sustituye en cada recarga.
+     */
+    public record RuntimeSettings(GeneralSettings general,
+                                  DatabaseSettings database,
+                                  LimitsSettings limits,
+                                  BonusSettings bonuses,
+                                  DisplaySettings display,
+                                  NavigableMap<Integer, List<String>> notifications,
+                                  WorldLimitSettings worldLimits,
+                                  AfkSettings afk,
+                                  LookupSettings lookup,
+                                  StartupSettings startup,
+                                  HistorySettings history) {
+    }
+
+    /**
+     * Resultado de {@link #loadAsync(Executor)}: el YAML leído, sus estructuras y los avisos de validación.
+     */
+    public record LoadedConfig(FileConfiguration config, RuntimeSettings settings, List<String> warnings) {
+    }
+
+    /**
+     * Parámetros de la sección <code>general</code>.
+     */
+    public record GeneralSettings(boolean notifyUpdate, boolean infoMessageOnJoin, int autoSaveMinutes, String dailyReset) {
+    }
+
     /**
      * Parámetros de conexión a la base de datos.
      * Se representa como record para obtener getters, <code>equals</code>, <code>hashCode</code> y <code>toString</code>
@@ -314,9 +606,9 @@ public class ConfigManager {
     /**
      * Define mundos permitidos/prohibidos para el cómputo de tiempo.
      */
-    public record WorldLimitSettings(boolean enabled, String mode, List<String> worlds) {
+    public record WorldLimitSettings(boolean enabled, String mode, Set<String> worlds) {
         public static WorldLimitSettings disabled() {
-            return new WorldLimitSettings(false, "whitelist", Collections.emptyList());
+            return new WorldLimitSettings(false, "whitelist", Collections.emptySet());
         }
 
         /**
@@ -332,6 +624,50 @@ public class ConfigManager {
         }
     }
 
+    /**
+     * Parámetros de detección AFK: umbral de inactividad y frecuencia de la pasada de muestreo.
+     */
+    public record AfkSettings(boolean enabled, int idleSeconds, int checkIntervalSeconds, boolean notifyPlayer) {
+        public static AfkSettings defaults() {
+            return new AfkSettings(true, 300, 5, true);
+        }
+    }
+
+    /**
+     * Tamaño máximo del índice de nombres y antigüedad de los jugadores que se precargan en él.
+     */
+    public record LookupSettings(int cacheSize, int warmupDays) {
+        public static LookupSettings defaults() {
+            return new LookupSettings(5000, 30);
+        }
+    }
+
+    /**
+     * Segundos que un login espera a que el storage esté listo y número de jugadores del ranking cacheado.
+     */
+    public record StartupSettings(int loginWaitSeconds, int topPlayers) {
+        public static StartupSettings defaults() {
+            return new StartupSettings(10, 10);
+        }
+
+        /**
+         * @return tope de la conexión a MySQL: la mitad de la espera de login, para que si el host no responde
+         *         haya tiempo de caer en JSON antes de que se empiecen a rechazar entradas.
+         */
+        public int connectTimeoutSeconds() {
+            return Math.max(1, loginWaitSeconds / 2);
+        }
+    }
+
+    /**
+     * Días que se conservan los buckets por hora; los diarios, semanales y mensuales no caducan.
+     */
+    public record HistorySettings(int hourlyRetentionDays) {
+        public static HistorySettings defaults() {
+            return new HistorySettings(7);
+        }
+    }
+
     public ConfigManager getConfigManager() {
         return configManager;
     }
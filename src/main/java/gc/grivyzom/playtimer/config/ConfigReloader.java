@@ -0,0 +1,89 @@
+package gc.grivyzom.playtimer.config;
+
+import gc.grivyzom.playtimer.PlayTimerPlugin;
+import gc.grivyzom.playtimer.storage.DatabaseManager;
+import org.bukkit.command.CommandSender;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * <h1>ConfigReloader</h1>
+ * <p>
+ *     Recarga en caliente de <code>config.yml</code> (<code>/playtimer reload</code>) en tres fases:
+ *     <ol>
+ *         <li>Lectura, interpretación y validación fuera del hilo principal ({@link ConfigManager#loadAsync(java.util.concurrent.Executor)}).
+ *             Si el YAML no es válido no se toca nada.</li>
+ *         <li>En el hilo principal, sustitución atómica de las estructuras precalculadas y propagación a los
+ *             componentes que dependen de ellas (AFK, índice de nombres, auto-guardado).</li>
+ *         <li>Si cambió la sección <code>database:</code>, o si el plugin arrancó con JSON porque MySQL no estaba
+ *             disponible, reconexión en segundo plano; mientras tanto el plugin sigue usando el storage anterior.</li>
+ *     </ol>
+ *     La lectura y la conexión bloquean, así que cada recarga usa su propio hilo en lugar del pool común.
+ * </p>
+ */
+public class ConfigReloader {
+
+    private final PlayTimerPlugin plugin;
+    private final AtomicBoolean reloading = new AtomicBoolean();
+
+    public ConfigReloader(PlayTimerPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /** Lanza la recarga e informa del resultado a <code>sender</code>. Llamar desde el hilo principal. */
+    public void reload(CommandSender sender) {
+        if (!reloading.compareAndSet(false, true)) {
+            sender.sendMessage("§cYa hay una recarga en curso.");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        ConfigManager configManager = plugin.getConfigManager();
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "PlayTimer-Reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        configManager.loadAsync(executor).thenComposeAsync(loaded -> {
+            ConfigManager.RuntimeSettings previous = configManager.apply(loaded);
+            plugin.applyRuntimeSettings(previous, loaded.settings());
+
+            for (String warning : loaded.warnings()) {
+                sender.sendMessage("§e⚠ " + warning);
+                plugin.getLogger().warning("[PlayTimer] " + warning);
+            }
+            sender.sendMessage("§aConfiguración recargada en §e" + (System.currentTimeMillis() - start) + " ms§a.");
+
+            boolean onMysql = plugin.getStorageManager() instanceof DatabaseManager;
+            if (onMysql && previous.database().equals(loaded.settings().database())) {
+                return CompletableFuture.completedFuture(null);
+            }
+            sender.sendMessage(onMysql
+                    ? "§7La sección database cambió, reconectando en segundo plano..."
+                    : "§7No hay conexión a MySQL activa, reintentando en segundo plano...");
+            return plugin.reconnectStorage(loaded.settings().database(), executor).thenAcceptAsync(result -> {
+                if (!result.switched()) {
+                    sender.sendMessage("§cNo se pudo conectar con MySQL; se mantiene el storage actual.");
+                    return;
+                }
+                sender.sendMessage("§aStorage reconectado en §e" + (System.currentTimeMillis() - start) + " ms§a.");
+                if (result.migratedPlayers() > 0) {
+                    sender.sendMessage("§aDatos de §e" + result.migratedPlayers() + "§a jugadores migrados de JSON a MySQL"
+                            + " §7(ficheros archivados como .migrado-*).");
+                }
+            }, plugin.getAsyncStorage().mainThread());
+        }, plugin.getAsyncStorage().mainThread()).whenCompleteAsync((ignored, error) -> {
+            executor.shutdown();
+            reloading.set(false);
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                sender.sendMessage("§cNo se recargó la configuración: §7" + cause.getMessage());
+                plugin.getLogger().log(Level.WARNING, "Error recargando config.yml", cause);
+            }
+        }, plugin.getAsyncStorage().mainThread());
+    }
+}
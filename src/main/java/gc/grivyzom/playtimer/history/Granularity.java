@@ -0,0 +1,85 @@
+package gc.grivyzom.playtimer.history;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Resolución de los buckets de la serie temporal de tiempo jugado.
+ * <p>
+ *     {@link #HOUR} es la serie base (permite ver horas pico); {@link #DAY}, {@link #WEEK} y {@link #MONTH} son
+ *     rollups pre-agregados que se incrementan a la vez en cada volcado. Los buckets se identifican por el
+ *     epoch (segundos) de su inicio en la zona horaria del servidor; las semanas empiezan en lunes.
+ * </p>
+ */
+public enum Granularity {
+
+    HOUR("hour", "hora", "horas", true, ChronoUnit.HOURS, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:00")),
+    DAY("day", "día", "días", false, ChronoUnit.DAYS, DateTimeFormatter.ofPattern("yyyy-MM-dd")),
+    WEEK("week", "semana", "semanas", true, ChronoUnit.WEEKS, DateTimeFormatter.ofPattern("'Semana' yyyy-MM-dd")),
+    MONTH("month", "mes", "meses", false, ChronoUnit.MONTHS, DateTimeFormatter.ofPattern("yyyy-MM"));
+
+    /** Zona usada para cortar los buckets (la del servidor). */
+    public static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private final String key;
+    private final String singular;
+    private final String plural;
+    private final boolean feminine;
+    private final ChronoUnit unit;
+    private final DateTimeFormatter labelFormat;
+
+    Granularity(String key, String singular, String plural, boolean feminine, ChronoUnit unit, DateTimeFormatter labelFormat) {
+        this.key = key;
+        this.singular = singular;
+        this.plural = plural;
+        this.feminine = feminine;
+        this.unit = unit;
+        this.labelFormat = labelFormat;
+    }
+
+    /** @return Clave persistida en storage (<code>hour</code>, <code>day</code>, ...). */
+    public String key() {
+        return key;
+    }
+
+    /** @return Descripción de los últimos <code>count</code> buckets (<code>últimos 7 días</code>, <code>última semana</code>). */
+    public String describeLast(int count) {
+        if (count == 1) {
+            return (feminine ? "última " : "último ") + singular;
+        }
+        return (feminine ? "últimas " : "últimos ") + count + " " + plural;
+    }
+
+    /**
+     * @return Inicio (epoch en segundos) del bucket que contiene el instante dado.
+     */
+    public long bucketStart(long epochSecond) {
+        ZonedDateTime time = Instant.ofEpochSecond(epochSecond).atZone(ZONE);
+        ZonedDateTime start = switch (this) {
+            case HOUR -> time.truncatedTo(ChronoUnit.HOURS);
+            case DAY -> time.toLocalDate().atStartOfDay(ZONE);
+            case WEEK -> time.toLocalDate().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).atStartOfDay(ZONE);
+            case MONTH -> time.toLocalDate().withDayOfMonth(1).atStartOfDay(ZONE);
+        };
+        return start.toEpochSecond();
+    }
+
+    /**
+     * Desplaza un inicio de bucket <code>amount</code> unidades (negativo = hacia atrás).
+     * Se vuelve a alinear al inicio del bucket para no arrastrar desfases de cambio horario.
+     */
+    public long shift(long bucketStart, long amount) {
+        ZonedDateTime time = Instant.ofEpochSecond(bucketStart).atZone(ZONE).plus(amount, unit);
+        return bucketStart(time.toEpochSecond());
+    }
+
+    /** @return Etiqueta legible del bucket para mostrar en chat. */
+    public String label(long bucketStart) {
+        return labelFormat.format(Instant.ofEpochSecond(bucketStart).atZone(ZONE));
+    }
+}
@@ -0,0 +1,72 @@
+package gc.grivyzom.playtimer.history;
+
+import java.util.Locale;
+
+/**
+ * Rango de consulta de historial: los últimos <code>count</code> buckets de una granularidad, incluyendo el actual.
+ * <p>
+ *     Formatos aceptados: <code>24h</code>, <code>7d</code>, <code>4w</code>, <code>6m</code> o los atajos
+ *     <code>hoy</code>/<code>today</code>, <code>semana</code>/<code>week</code> y <code>mes</code>/<code>month</code>.
+ * </p>
+ */
+public record HistoryRange(Granularity granularity, int count) {
+
+    /** Rango usado cuando no se indica ninguno. */
+    public static final HistoryRange DEFAULT = new HistoryRange(Granularity.DAY, 7);
+
+    /**
+     * @return el rango interpretado, o <code>null</code> si el texto no es válido.
+     */
+    public static HistoryRange parse(String input) {
+        String text = input.toLowerCase(Locale.ROOT);
+        switch (text) {
+            case "hoy", "today" -> { return new HistoryRange(Granularity.DAY, 1); }
+            case "semana", "week" -> { return new HistoryRange(Granularity.WEEK, 1); }
+            case "mes", "month" -> { return new HistoryRange(Granularity.MONTH, 1); }
+            default -> { }
+        }
+        if (text.length() < 2) {
+            return null;
+        }
+
+        Granularity granularity = switch (text.charAt(text.length() - 1)) {
+            case 'h' -> Granularity.HOUR;
+            case 'd' -> Granularity.DAY;
+            case 'w', 's' -> Granularity.WEEK;
+            case 'm' -> Granularity.MONTH;
+            default -> null;
+        };
+        if (granularity == null) {
+            return null;
+        }
+        try {
+            int count = Integer.parseInt(text.substring(0, text.length() - 1));
+            if (count < 1 || count > maxCount(granularity)) {
+                return null;
+            }
+            return new HistoryRange(granularity, count);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /** Tope de buckets por consulta, para que la respuesta quepa en el chat. */
+    public static int maxCount(Granularity granularity) {
+        return switch (granularity) {
+            case HOUR -> 168;
+            case DAY -> 90;
+            case WEEK -> 52;
+            case MONTH -> 24;
+        };
+    }
+
+    /** @return Inicio del bucket más antiguo incluido en el rango. */
+    public long from(long nowEpochSecond) {
+        return granularity.shift(to(nowEpochSecond), -(count - 1L));
+    }
+
+    /** @return Inicio del bucket actual (el más reciente del rango). */
+    public long to(long nowEpochSecond) {
+        return granularity.bucketStart(nowEpochSecond);
+    }
+}
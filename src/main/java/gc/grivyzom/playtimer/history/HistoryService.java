@@ -0,0 +1,98 @@
+package gc.grivyzom.playtimer.history;
+
+import gc.grivyzom.playtimer.storage.AsyncStorage;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <h1>HistoryService</h1>
+ * <p>
+ *     Punto de entrada a la serie temporal de tiempo jugado. Los volcados de sesión pasan por aquí para
+ *     actualizar en la misma operación el storage (total + buckets) y la caché de rollups de los jugadores
+ *     conectados, que es lo que leen los placeholders sin tocar la base de datos.
+ * </p>
+ * <p>
+ *     Todas las mutaciones de la caché se hacen dentro de tareas de {@link AsyncStorage}; como ese executor es
+ *     de un solo hilo, carga, volcados y descarga de un jugador se aplican siempre en orden.
+ * </p>
+ */
+public class HistoryService {
+
+    private static final long PRUNE_INTERVAL_SECONDS = 3600L;
+
+    private final AsyncStorage storage;
+    private final Map<UUID, PlaytimeRollups> online = new ConcurrentHashMap<>();
+    // Sólo desde el hilo principal (tarea de auto-guardado)
+    private long lastPrune;
+
+    public HistoryService(AsyncStorage storage) {
+        this.storage = storage;
+    }
+
+    /** Carga total y rollups del periodo actual de un jugador que acaba de entrar. */
+    public void load(UUID player) {
+        storage.run(s -> {
+            long now = System.currentTimeMillis() / 1000;
+            long day = Granularity.DAY.bucketStart(now);
+            long week = Granularity.WEEK.bucketStart(now);
+            long month = Granularity.MONTH.bucketStart(now);
+            online.put(player, new PlaytimeRollups(
+                    s.getPlayTime(player),
+                    day, s.getPlaytimeSeries(player, Granularity.DAY, day, day).getOrDefault(day, 0L),
+                    week, s.getPlaytimeSeries(player, Granularity.WEEK, week, week).getOrDefault(week, 0L),
+                    month, s.getPlaytimeSeries(player, Granularity.MONTH, month, month).getOrDefault(month, 0L)
+            ));
+        });
+    }
+
+    /** Libera la caché de un jugador que ha salido (tras su último volcado). */
+    public void unload(UUID player) {
+        storage.run(s -> online.remove(player));
+    }
+
+    /**
+     * Registra tiempo jugado de varios jugadores en un único volcado.
+     * El tiempo se atribuye a los buckets que contienen <code>epochSecond</code>.
+     */
+    public void record(Map<UUID, Long> seconds, long epochSecond) {
+        if (seconds.isEmpty()) {
+            return;
+        }
+        storage.run(s -> {
+            s.recordPlaytime(seconds, epochSecond);
+            seconds.forEach((id, played) ->
+                    online.computeIfPresent(id, (k, rollups) -> rollups.plus(played, epochSecond)));
+        });
+    }
+
+    /** @return rollups cacheados del jugador, o <code>null</code> si no está conectado o aún no se cargaron. */
+    public PlaytimeRollups getCached(UUID player) {
+        return online.get(player);
+    }
+
+    /**
+     * Borra los buckets por hora con más de <code>retentionDays</code> días. Como mucho una vez por hora: es
+     * seguro llamarlo en cada auto-guardado.
+     */
+    public void pruneHourly(int retentionDays) {
+        long now = System.currentTimeMillis() / 1000;
+        if (now - lastPrune < PRUNE_INTERVAL_SECONDS) {
+            return;
+        }
+        lastPrune = now;
+        long before = Granularity.HOUR.bucketStart(now) - retentionDays * 86400L;
+        storage.run(s -> s.pruneSeries(Granularity.HOUR, before));
+    }
+
+    /** Consulta asíncrona de los buckets de un rango; coste proporcional al número de buckets. */
+    public CompletableFuture<SortedMap<Long, Long>> query(UUID player, HistoryRange range) {
+        long now = System.currentTimeMillis() / 1000;
+        long from = range.from(now);
+        long to = range.to(now);
+        return storage.supply(s -> s.getPlaytimeSeries(player, range.granularity(), from, to));
+    }
+}
@@ -0,0 +1,48 @@
+package gc.grivyzom.playtimer.history;
+
+import gc.grivyzom.playtimer.config.ConfigManager;
+import gc.grivyzom.playtimer.storage.AsyncStorage;
+import gc.grivyzom.playtimer.storage.LeaderboardEntry;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>Leaderboard</h1>
+ * <p>
+ *     Caché del ranking de tiempo total (<code>startup.top_players</code> posiciones). Se precarga al arrancar y
+ *     se refresca tras cada auto-guardado; las lecturas nunca tocan el storage.
+ * </p>
+ */
+public class Leaderboard {
+
+    private final AsyncStorage storage;
+    private final ConfigManager configManager;
+    private volatile List<LeaderboardEntry> top = List.of();
+
+    public Leaderboard(AsyncStorage storage, ConfigManager configManager) {
+        this.storage = storage;
+        this.configManager = configManager;
+    }
+
+    /**
+     * Vuelve a leer el ranking; se encola detrás de los volcados pendientes.
+     *
+     * @return futuro con lo que tardó la consulta en el hilo de storage (ms), sin contar la espera en cola.
+     */
+    public CompletableFuture<Long> refresh() {
+        int size = configManager.getStartupSettings().topPlayers();
+        return storage.supply(s -> {
+            long start = System.nanoTime();
+            top = List.copyOf(s.loadTopPlayers(size));
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        });
+    }
+
+    /** @return la posición <code>rank</code> (desde 1), o <code>null</code> si no existe. */
+    public LeaderboardEntry get(int rank) {
+        List<LeaderboardEntry> current = top;
+        return rank >= 1 && rank <= current.size() ? current.get(rank - 1) : null;
+    }
+}
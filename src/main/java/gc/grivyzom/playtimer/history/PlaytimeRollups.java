@@ -0,0 +1,38 @@
+package gc.grivyzom.playtimer.history;
+
+/**
+ * Instantánea inmutable de los contadores de un jugador conectado: total acumulado y los rollups del
+ * día, semana y mes en curso. Cada rollup guarda el inicio de su bucket para detectar el cambio de periodo.
+ */
+public record PlaytimeRollups(long total,
+                              long dayStart, long day,
+                              long weekStart, long week,
+                              long monthStart, long month) {
+
+    /**
+     * @return una copia con <code>seconds</code> sumados en el instante indicado; si el periodo cambió,
+     *         el rollup correspondiente empieza de cero.
+     */
+    public PlaytimeRollups plus(long seconds, long epochSecond) {
+        long d = Granularity.DAY.bucketStart(epochSecond);
+        long w = Granularity.WEEK.bucketStart(epochSecond);
+        long m = Granularity.MONTH.bucketStart(epochSecond);
+        return new PlaytimeRollups(
+                total + seconds,
+                d, (d == dayStart ? day : 0L) + seconds,
+                w, (w == weekStart ? week : 0L) + seconds,
+                m, (m == monthStart ? month : 0L) + seconds
+        );
+    }
+
+    /** @return segundos del bucket actual de la granularidad dada (0 si el bucket cacheado ya caducó). */
+    public long current(Granularity granularity, long nowEpochSecond) {
+        long start = granularity.bucketStart(nowEpochSecond);
+        return switch (granularity) {
+            case DAY -> start == dayStart ? day : 0L;
+            case WEEK -> start == weekStart ? week : 0L;
+            case MONTH -> start == monthStart ? month : 0L;
+            case HOUR -> 0L;
+        };
+    }
+}
@@ -1,6 +1,8 @@
 package gc.grivyzom.playtimer.listeners;
 
-import gc.grivyzom.playtimer.storage.StorageManager;
+import gc.grivyzom.playtimer.afk.AfkManager;
+import gc.grivyzom.playtimer.history.HistoryService;
+import gc.grivyzom.playtimer.lookup.PlayerLookup;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerJoinEvent;
@@ -10,40 +12,79 @@ import org.bukkit.entity.Player;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
-import java.sql.SQLException;
 
 public class PlayTimeListener implements Listener {
 
-    private final StorageManager storage;
-    private final Map<UUID, Long> joinTimestamps = new HashMap<>();
+    private final HistoryService history;
+    private final AfkManager afkManager;
+    private final PlayerLookup lookup;
+    // Inicio (ms) del tramo de sesión que aún no se ha volcado a storage
+    private final Map<UUID, Long> segmentStarts = new HashMap<>();
 
-    public PlayTimeListener(StorageManager storage) {
-        this.storage = storage;
+    public PlayTimeListener(HistoryService history, AfkManager afkManager, PlayerLookup lookup) {
+        this.history = history;
+        this.afkManager = afkManager;
+        this.lookup = lookup;
     }
 
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
-        Player p = event.getPlayer();
-        joinTimestamps.put(p.getUniqueId(), System.currentTimeMillis());
+        startSession(event.getPlayer());
     }
 
     @EventHandler
     public void onPlayerQuit(PlayerQuitEvent event) {
         Player p = event.getPlayer();
         UUID id = p.getUniqueId();
-        long in = joinTimestamps.getOrDefault(id, System.currentTimeMillis());
-        long diff = System.currentTimeMillis() - in;
+        long now = System.currentTimeMillis();
 
-        // Convert ms → seconds
-        long played = diff / 1000;
+        long played = drainActiveSeconds(id, now);
+        afkManager.untrack(id);
+        segmentStarts.remove(id);
 
-        try {
-            storage.savePlayTime(id, played);
-        } catch (SQLException e) {
-            // Log the error but don't crash the server
-            p.getServer().getLogger().warning("Error saving playtime for " + p.getName() + ": " + e.getMessage());
+        if (played > 0) {
+            history.record(Map.of(id, played), now / 1000);
         }
+        history.unload(id);
+    }
 
-        joinTimestamps.remove(id);
+    /** Abre la sesión de un jugador (al entrar o si ya estaba conectado al habilitar el plugin). */
+    public void startSession(Player p) {
+        segmentStarts.put(p.getUniqueId(), System.currentTimeMillis());
+        afkManager.track(p);
+        lookup.registerJoin(p);
+        history.load(p.getUniqueId());
+    }
+
+    /**
+     * Vuelca de una vez el tiempo activo acumulado por todos los jugadores conectados.
+     * Se llama periódicamente (<code>general.auto_save_minutes</code>) y al deshabilitar el plugin.
+     */
+    public void flushAll() {
+        long now = System.currentTimeMillis();
+        Map<UUID, Long> batch = new HashMap<>();
+        for (UUID id : segmentStarts.keySet()) {
+            long played = drainActiveSeconds(id, now);
+            if (played > 0) {
+                batch.put(id, played);
+            }
+        }
+        history.record(batch, now / 1000);
+    }
+
+    /**
+     * Segundos activos (descontando AFK) desde el último volcado. Los milisegundos sobrantes se
+     * arrastran al siguiente tramo para no perder tiempo por redondeo.
+     */
+    private long drainActiveSeconds(UUID id, long now) {
+        Long start = segmentStarts.get(id);
+        if (start == null) {
+            return 0L;
+        }
+        long active = Math.max(0L, now - start - afkManager.drainIdleMillis(id, now));
+        segmentStarts.put(id, now - active % 1000);
+
+        // Convert ms → seconds
+        return active / 1000;
     }
-}
\ No newline at end of file
+}
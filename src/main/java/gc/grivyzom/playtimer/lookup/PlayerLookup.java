@@ -0,0 +1,213 @@
+package gc.grivyzom.playtimer.lookup;
+
+import gc.grivyzom.playtimer.config.ConfigManager;
+import gc.grivyzom.playtimer.history.Granularity;
+import gc.grivyzom.playtimer.storage.AsyncStorage;
+import gc.grivyzom.playtimer.storage.PlayerProfile;
+import net.luckperms.api.LuckPermsProvider;
+import net.luckperms.api.model.user.User;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>PlayerLookup</h1>
+ * <p>
+ *     Resuelve nombres de jugador a UUID sin pasar por {@link org.bukkit.Bukkit#getOfflinePlayer(String)}, que
+ *     puede bloquear el hilo principal con una consulta a Mojang.
+ * </p>
+ * <p>
+ *     Mantiene un índice local <em>nombre → UUID</em> acotado (LRU de <code>lookup.cache_size</code> entradas) que
+ *     se alimenta al entrar cada jugador (junto a <code>ensureUserExists</code>) y se precarga con los jugadores
+ *     activos recientemente. Un fallo en el índice se resuelve contra el storage de forma asíncrona y el resultado
+ *     se añade al índice. El autocompletado de comandos se sirve únicamente desde este índice.
+ * </p>
+ */
+public class PlayerLookup {
+
+    private final JavaPlugin plugin;
+    private final AsyncStorage storage;
+    private volatile ConfigManager.LookupSettings settings;
+    private volatile int capacity;
+    private final Map<String, PlayerProfile> index;
+    // uuid → clave actual en index, para retirar el nombre anterior cuando un jugador se renombra
+    private final Map<UUID, String> keysByUuid = new HashMap<>();
+
+    public PlayerLookup(JavaPlugin plugin, AsyncStorage storage, ConfigManager.LookupSettings settings) {
+        this.plugin = plugin;
+        this.storage = storage;
+        this.settings = settings;
+        this.capacity = Math.max(1, settings.cacheSize());
+        this.index = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PlayerProfile> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+                keysByUuid.remove(eldest.getValue().uuid(), eldest.getKey());
+                return true;
+            }
+        };
+    }
+
+    /** Aplica una configuración recargada; si el índice se reduce se descartan las entradas menos usadas. */
+    public void applySettings(ConfigManager.LookupSettings next) {
+        this.settings = next;
+        this.capacity = Math.max(1, next.cacheSize());
+        synchronized (index) {
+            var it = index.entrySet().iterator();
+            while (index.size() > capacity && it.hasNext()) {
+                Map.Entry<String, PlayerProfile> eldest = it.next();
+                keysByUuid.remove(eldest.getValue().uuid(), eldest.getKey());
+                it.remove();
+            }
+        }
+    }
+
+    /** Vacía el índice (p. ej. al cambiar de base de datos); conviene volver a llamar a {@link #warmUp()}. */
+    public void clear() {
+        synchronized (index) {
+            index.clear();
+            keysByUuid.clear();
+        }
+    }
+
+    // ───────────────────────────────── ALIMENTACIÓN DEL ÍNDICE ─────────────────────────────────
+
+    /**
+     * Precarga el índice con los jugadores que han jugado en los últimos <code>lookup.warmup_days</code> días.
+     *
+     * @return futuro con lo que tardó la consulta en el hilo de storage (ms), sin contar la espera en cola.
+     */
+    public CompletableFuture<Long> warmUp() {
+        ConfigManager.LookupSettings settings = this.settings;
+        long since = Granularity.DAY.shift(Granularity.DAY.bucketStart(System.currentTimeMillis() / 1000),
+                -settings.warmupDays());
+        long[] elapsed = new long[1];
+        return storage.supply(s -> {
+            long start = System.nanoTime();
+            List<PlayerProfile> recent = s.loadRecentPlayers(since, settings.cacheSize());
+            elapsed[0] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            return recent;
+        }).thenApply(recent -> {
+            synchronized (index) {
+                // Del menos al más reciente, para que los más recientes queden al final del LRU
+                for (int i = recent.size() - 1; i >= 0; i--) {
+                    PlayerProfile profile = recent.get(i);
+                    // Un jugador ya indexado (p. ej. entró durante el arranque) conserva su nombre actual
+                    if (!keysByUuid.containsKey(profile.uuid())
+                            && !index.containsKey(profile.name().toLowerCase(Locale.ROOT))) {
+                        put(profile);
+                    }
+                }
+            }
+            return elapsed[0];
+        });
+    }
+
+    /** Registra la entrada de un jugador: actualiza el índice y su registro en storage. */
+    public void registerJoin(Player player) {
+        UUID uuid = player.getUniqueId();
+        String name = player.getName();
+        String rank = rankOf(player);
+        remember(new PlayerProfile(uuid, name));
+        storage.run(s -> s.ensureUserExists(uuid, name, rank));
+    }
+
+    private void remember(PlayerProfile profile) {
+        synchronized (index) {
+            put(profile);
+        }
+    }
+
+    // Llamar con el lock de index; sustituye la entrada anterior del mismo UUID si cambió de nombre
+    private void put(PlayerProfile profile) {
+        String key = profile.name().toLowerCase(Locale.ROOT);
+        String previousKey = keysByUuid.put(profile.uuid(), key);
+        if (previousKey != null && !previousKey.equals(key)) {
+            index.remove(previousKey);
+        }
+        PlayerProfile displaced = index.put(key, profile);
+        // Otro UUID que tenía este nombre (se lo cedió): deja de apuntar aquí
+        if (displaced != null && !displaced.uuid().equals(profile.uuid())) {
+            keysByUuid.remove(displaced.uuid(), key);
+        }
+    }
+
+    // ───────────────────────────────── CONSULTAS ─────────────────────────────────
+
+    /**
+     * Resuelve un nombre a un jugador conocido. Llamar desde el hilo principal.
+     *
+     * @return futuro con el perfil, o con <code>null</code> si el jugador nunca ha entrado.
+     */
+    public CompletableFuture<PlayerProfile> resolve(String name) {
+        Player online = plugin.getServer().getPlayerExact(name);
+        if (online != null) {
+            return CompletableFuture.completedFuture(new PlayerProfile(online.getUniqueId(), online.getName()));
+        }
+
+        PlayerProfile cached;
+        synchronized (index) {
+            cached = index.get(name.toLowerCase(Locale.ROOT));
+        }
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        return storage.supply(s -> s.findPlayer(name)).thenApply(found -> {
+            if (found != null) {
+                remember(found);
+            }
+            return found;
+        });
+    }
+
+    /**
+     * @return nombres del índice que empiezan por <code>prefix</code> (sin distinguir mayúsculas), como
+     *         máximo <code>limit</code>.
+     */
+    public List<String> complete(String prefix, int limit) {
+        String lower = prefix.toLowerCase(Locale.ROOT);
+        List<String> result = new ArrayList<>();
+        synchronized (index) {
+            // Iterar sobre values() no altera el orden de acceso del LRU
+            for (PlayerProfile profile : index.values()) {
+                if (profile.name().toLowerCase(Locale.ROOT).startsWith(lower)) {
+                    result.add(profile.name());
+                    if (result.size() >= limit) {
+                        break;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    // ───────────────────────────────── RANGO ─────────────────────────────────
+
+    // null sin LuckPerms: el storage conserva el rango guardado (p. ej. asignado con /playtimer bulk rank)
+    private String rankOf(Player player) {
+        if (!plugin.getServer().getPluginManager().isPluginEnabled("LuckPerms")) {
+            return null;
+        }
+        return LuckPermsHook.primaryGroup(player.getUniqueId());
+    }
+
+    // Aislado en su propia clase para no cargar las clases de LuckPerms si no está instalado
+    private static final class LuckPermsHook {
+        private static String primaryGroup(UUID uuid) {
+            User user = LuckPermsProvider.get().getUserManager().getUser(uuid);
+            return user != null ? user.getPrimaryGroup() : null;
+        }
+    }
+}
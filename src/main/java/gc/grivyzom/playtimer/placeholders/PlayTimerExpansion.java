@@ -0,0 +1,106 @@
+package gc.grivyzom.playtimer.placeholders;
+
+import gc.grivyzom.playtimer.history.Granularity;
+import gc.grivyzom.playtimer.history.HistoryService;
+import gc.grivyzom.playtimer.history.Leaderboard;
+import gc.grivyzom.playtimer.history.PlaytimeRollups;
+import gc.grivyzom.playtimer.storage.LeaderboardEntry;
+import gc.grivyzom.playtimer.util.TimeFormatter;
+import me.clip.placeholderapi.expansion.PlaceholderExpansion;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.plugin.java.JavaPlugin;
+
+/**
+ * Placeholders de PlaceholderAPI basados en los rollups cacheados de {@link HistoryService}.
+ * <p>
+ *     <code>%playtimer_total%</code>, <code>%playtimer_today%</code>, <code>%playtimer_week%</code> y
+ *     <code>%playtimer_month%</code> devuelven segundos; con el sufijo <code>_formatted</code> devuelven
+ *     <code>3h 20m 5s</code>. Nunca consultan el storage: sólo hay valores para jugadores conectados.
+ * </p>
+ * <p>
+ *     <code>%playtimer_top_&lt;n&gt;_name%</code> y <code>%playtimer_top_&lt;n&gt;_time[_formatted]%</code> leen
+ *     la posición <code>n</code> del {@link Leaderboard} cacheado.
+ * </p>
+ */
+public class PlayTimerExpansion extends PlaceholderExpansion {
+
+    private final JavaPlugin plugin;
+    private final HistoryService history;
+    private final Leaderboard leaderboard;
+
+    public PlayTimerExpansion(JavaPlugin plugin, HistoryService history, Leaderboard leaderboard) {
+        this.plugin = plugin;
+        this.history = history;
+        this.leaderboard = leaderboard;
+    }
+
+    @Override
+    public String getIdentifier() {
+        return "playtimer";
+    }
+
+    @Override
+    public String getAuthor() {
+        return "Grivyzom";
+    }
+
+    @Override
+    public String getVersion() {
+        return plugin.getDescription().getVersion();
+    }
+
+    @Override
+    public boolean persist() {
+        return true;
+    }
+
+    @Override
+    public String onRequest(OfflinePlayer player, String params) {
+        boolean formatted = params.endsWith("_formatted");
+        String key = formatted ? params.substring(0, params.length() - "_formatted".length()) : params;
+
+        if (key.startsWith("top_")) {
+            return onTopRequest(key, formatted);
+        }
+        if (player == null) {
+            return "";
+        }
+
+        PlaytimeRollups rollups = history.getCached(player.getUniqueId());
+        long now = System.currentTimeMillis() / 1000;
+        Long seconds = switch (key) {
+            case "total" -> rollups == null ? 0L : rollups.total();
+            case "today" -> rollups == null ? 0L : rollups.current(Granularity.DAY, now);
+            case "week" -> rollups == null ? 0L : rollups.current(Granularity.WEEK, now);
+            case "month" -> rollups == null ? 0L : rollups.current(Granularity.MONTH, now);
+            default -> null;
+        };
+        if (seconds == null) {
+            return null;
+        }
+        return formatted ? TimeFormatter.format(seconds) : String.valueOf(seconds);
+    }
+
+    // top_<n>_name | top_<n>_time
+    private String onTopRequest(String key, boolean formatted) {
+        String[] parts = key.split("_");
+        if (parts.length != 3) {
+            return null;
+        }
+        int rank;
+        try {
+            rank = Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        LeaderboardEntry entry = leaderboard.get(rank);
+        return switch (parts[2]) {
+            case "name" -> entry == null || entry.name() == null ? "" : entry.name();
+            case "time" -> {
+                long seconds = entry == null ? 0L : entry.seconds();
+                yield formatted ? TimeFormatter.format(seconds) : String.valueOf(seconds);
+            }
+            default -> null;
+        };
+    }
+}
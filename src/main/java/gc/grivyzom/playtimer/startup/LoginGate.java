@@ -0,0 +1,47 @@
+package gc.grivyzom.playtimer.startup;
+
+import gc.grivyzom.playtimer.config.ConfigManager;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Retiene los logins que llegan mientras el storage se está abriendo. El evento es asíncrono, así que esperar
+ * aquí no afecta al hilo principal; si el storage no está listo en <code>startup.login_wait_seconds</code> se
+ * rechaza la entrada. Una vez abierto, el coste es una comprobación del futuro.
+ */
+public class LoginGate implements Listener {
+
+    private static final String STARTING_MESSAGE = "§eServidor iniciando, vuelve a entrar en unos segundos.";
+
+    private final CompletableFuture<?> ready;
+    private final ConfigManager configManager;
+
+    public LoginGate(CompletableFuture<?> ready, ConfigManager configManager) {
+        this.ready = ready;
+        this.configManager = configManager;
+    }
+
+    @EventHandler(priority = EventPriority.LOW)
+    public void onPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (ready.isDone() || event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            return;
+        }
+        try {
+            ready.get(configManager.getStartupSettings().loginWaitSeconds(), TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, STARTING_MESSAGE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, STARTING_MESSAGE);
+        } catch (ExecutionException e) {
+            // Sin storage no hay nada que esperar: el error ya está en el log y no se bloquea el servidor
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package gc.grivyzom.playtimer.startup;
+
+import gc.grivyzom.playtimer.config.ConfigManager;
+import gc.grivyzom.playtimer.history.Leaderboard;
+import gc.grivyzom.playtimer.lookup.PlayerLookup;
+import gc.grivyzom.playtimer.storage.DatabaseManager;
+import gc.grivyzom.playtimer.storage.JsonStorageManager;
+import gc.grivyzom.playtimer.storage.StorageManager;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>StartupLoader</h1>
+ * <p>
+ *     Saca del hilo principal el trabajo pesado de <code>onEnable</code>, en dos fases:
+ *     <ol>
+ *         <li>Apertura del storage: conexión a MySQL y comprobación del esquema (más la migración de lo que
+ *             quedara en los ficheros JSON de un arranque anterior) o, si falla, lectura de los ficheros JSON.
+ *             Es lo mínimo para aceptar jugadores ({@link LoginGate} espera a esta fase).</li>
+ *         <li>Warm-up: índice de nombres de los jugadores recientes y ranking de tiempo total. Las dos consultas
+ *             se encolan en el hilo de storage y se ejecutan una detrás de otra (hay una sola conexión); no
+ *             bloquean los logins.</li>
+ *     </ol>
+ *     Mientras tanto <code>onEnable</code> termina de registrar listeners y comandos; lo que éstos encolen en
+ *     {@link gc.grivyzom.playtimer.storage.AsyncStorage} se aplica en cuanto el storage está abierto.
+ *     El tiempo de cada fase se escribe en el log.
+ * </p>
+ */
+public class StartupLoader {
+
+    private final JavaPlugin plugin;
+    private final long startedAt = System.nanoTime();
+
+    public StartupLoader(JavaPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /** Fase 1: abre el storage en un hilo propio. El futuro nunca falla salvo error inesperado. */
+    public CompletableFuture<StorageManager> openStorage(ConfigManager.DatabaseSettings db, int connectTimeoutSeconds) {
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "PlayTimer-Startup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletableFuture<StorageManager> opening = CompletableFuture.supplyAsync(() -> {
+            long phase = System.nanoTime();
+            try {
+                DatabaseManager database = new DatabaseManager(db.toJdbcUrl(), db.user(), db.password(),
+                        connectTimeoutSeconds);
+                logPhase("conexión MySQL", phase);
+                phase = System.nanoTime();
+                try {
+                    database.ensureSchema();
+                } catch (SQLException ex) {
+                    closeQuietly(database);
+                    throw ex;
+                }
+                logPhase("esquema", phase);
+                if (JsonStorageManager.hasData(plugin)) {
+                    // Datos guardados en JSON mientras MySQL no estaba disponible
+                    phase = System.nanoTime();
+                    try {
+                        int migrated = new JsonStorageManager(plugin).migrateInto(database);
+                        logPhase("migración JSON (" + migrated + " jugadores)", phase);
+                    } catch (SQLException ex) {
+                        plugin.getLogger().warning("No se pudieron migrar los ficheros JSON a MySQL (" + ex.getMessage() +
+                                "); se conservan para el próximo arranque.");
+                    }
+                }
+                plugin.getLogger().info("PlayTimer: conectado a MySQL.");
+                return database;
+            } catch (SQLException ex) {
+                plugin.getLogger().warning("No se pudo conectar a MySQL (" + ex.getMessage() +
+                        "), usando JsonStorageManager.");
+                phase = System.nanoTime();
+                StorageManager json = new JsonStorageManager(plugin);
+                logPhase("carga JSON", phase);
+                return json;
+            }
+        }, executor);
+        opening.whenComplete((storage, error) -> executor.shutdown());
+        return opening;
+    }
+
+    /**
+     * Fase 2: precarga las cachés cuando el storage esté listo. Cada fase registra el tiempo de su propia consulta,
+     * medido dentro del hilo de storage.
+     */
+    public CompletableFuture<Void> warmUp(CompletableFuture<?> ready, PlayerLookup lookup, Leaderboard leaderboard) {
+        return ready.thenCompose(ignored -> CompletableFuture.allOf(
+                lookup.warmUp().thenAccept(millis -> logPhaseMillis("índice de nombres", millis)),
+                leaderboard.refresh().thenAccept(millis -> logPhaseMillis("ranking", millis))
+        )).whenComplete((ignored, error) -> {
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                plugin.getLogger().warning("Warm-up incompleto: " + cause.getMessage());
+                return;
+            }
+            plugin.getLogger().info("[Arranque] completo en " + elapsedMillis(startedAt) + " ms");
+        });
+    }
+
+    private void logPhase(String phase, long startNanos) {
+        logPhaseMillis(phase, elapsedMillis(startNanos));
+    }
+
+    private void logPhaseMillis(String phase, long millis) {
+        plugin.getLogger().info("[Arranque] " + phase + ": " + millis + " ms");
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private void closeQuietly(StorageManager storage) {
+        try {
+            storage.close();
+        } catch (SQLException e) {
+            plugin.getLogger().warning("Error cerrando el storage: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package gc.grivyzom.playtimer.storage;
+
+import org.bukkit.plugin.Plugin;
+
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * <h1>AsyncStorage</h1>
+ * <p>
+ *     Ejecuta todas las operaciones sobre el {@link StorageManager} en un único hilo dedicado, fuera del hilo
+ *     principal del servidor.
+ * </p>
+ * <p>
+ *     Un solo hilo garantiza que las operaciones se aplican en el orden en que se encolan (un volcado de tiempo
+ *     nunca adelanta a otro) y que ni la conexión JDBC ni los mapas del backend JSON se usan concurrentemente.
+ * </p>
+ * <p>
+ *     Se crea antes de que el storage esté abierto: la primera tarea del hilo espera a que termine la apertura,
+ *     de modo que las operaciones encoladas durante el arranque se aplican en orden en cuanto hay storage.
+ * </p>
+ */
+public class AsyncStorage {
+
+    /** Operación sobre el storage que devuelve un resultado. */
+    @FunctionalInterface
+    public interface StorageCall<T> {
+        T call(StorageManager storage) throws SQLException;
+    }
+
+    /** Operación sobre el storage sin resultado. */
+    @FunctionalInterface
+    public interface StorageTask {
+        void run(StorageManager storage) throws SQLException;
+    }
+
+    private final Plugin plugin;
+    // Sólo se lee y sustituye desde el hilo de storage (salvo en shutdown, con el executor ya parado)
+    private volatile StorageManager storage;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "PlayTimer-Storage");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Executor mainThread;
+
+    public AsyncStorage(Plugin plugin, CompletableFuture<? extends StorageManager> opening) {
+        this.plugin = plugin;
+        this.mainThread = task -> plugin.getServer().getScheduler().runTask(plugin, task);
+        executor.execute(() -> {
+            try {
+                storage = opening.join();
+            } catch (Exception e) {
+                plugin.getLogger().log(Level.SEVERE, "No se pudo abrir el storage", e);
+            }
+        });
+    }
+
+    /** Encola una consulta; el futuro se completa en el hilo de storage. */
+    public <T> CompletableFuture<T> supply(StorageCall<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            if (storage == null) {
+                future.completeExceptionally(new SQLException("Storage no disponible"));
+                return;
+            }
+            try {
+                future.complete(call.call(storage));
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /** Encola una escritura; los errores se registran en el log además de propagarse al futuro. */
+    public CompletableFuture<Void> run(StorageTask task) {
+        return this.<Void>supply(s -> {
+            task.run(s);
+            return null;
+        }).whenComplete((ignored, error) -> {
+            if (error != null) {
+                plugin.getLogger().log(Level.WARNING, "Error en operación de storage", error);
+            }
+        });
+    }
+
+    /**
+     * Sustituye el storage (p. ej. tras cambiar <code>database:</code> en la config). Las operaciones encoladas
+     * antes usan el anterior, que se cierra después; las encoladas a continuación, el nuevo. También funciona si
+     * la apertura inicial falló y no había storage.
+     *
+     * @param handover se ejecuta con el storage anterior justo antes del cambio, en la misma tarea, de modo que
+     *                 ninguna escritura se cuela entre ambos (p. ej. para migrar sus datos al nuevo). Si falla no
+     *                 se cambia de storage y se cierra <code>next</code>. No se llama si no había storage.
+     * @return futuro con el resultado de <code>handover</code> (<code>null</code> si no se llamó).
+     */
+    public <T> CompletableFuture<T> replace(StorageManager next, StorageCall<T> handover) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            StorageManager previous = storage;
+            T result = null;
+            if (previous != null) {
+                try {
+                    result = handover.call(previous);
+                } catch (Exception e) {
+                    try {
+                        next.close();
+                    } catch (SQLException closeError) {
+                        e.addSuppressed(closeError);
+                    }
+                    future.completeExceptionally(e);
+                    return;
+                }
+            }
+            storage = next;
+            if (previous != null) {
+                try {
+                    previous.close();
+                } catch (SQLException e) {
+                    plugin.getLogger().warning("Error cerrando el storage anterior: " + e.getMessage());
+                }
+            }
+            future.complete(result);
+        });
+        return future;
+    }
+
+    /** @return Executor que devuelve la ejecución al hilo principal (para <code>thenAcceptAsync</code>). */
+    public Executor mainThread() {
+        return mainThread;
+    }
+
+    /**
+     * Espera a que terminen las operaciones pendientes y cierra el storage. Llamar desde <code>onDisable</code>.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Tiempo agotado esperando operaciones de storage pendientes.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (storage == null) {
+            return;
+        }
+        try {
+            storage.close();
+        } catch (SQLException e) {
+            plugin.getLogger().warning("Error cerrando el storage: " + e.getMessage());
+        }
+    }
+}
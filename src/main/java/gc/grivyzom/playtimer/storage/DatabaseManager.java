@@ -1,15 +1,103 @@
 package gc.grivyzom.playtimer.storage;
 
+import gc.grivyzom.playtimer.admin.BulkOperation;
+import gc.grivyzom.playtimer.admin.BulkProgress;
+import gc.grivyzom.playtimer.admin.BulkTarget;
+import gc.grivyzom.playtimer.history.Granularity;
+
 import java.sql.*;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.UUID;
 
 public class DatabaseManager implements StorageManager {
     private final Connection connection;
 
-    public DatabaseManager(String url, String user, String pass) throws SQLException {
-        this.connection = DriverManager.getConnection(url, user, pass);
+    /**
+     * @param connectTimeoutSeconds tope para establecer la conexión; sin él, un host inalcanzable bloquea hasta
+     *                              el timeout TCP del sistema.
+     */
+    public DatabaseManager(String url, String user, String pass, int connectTimeoutSeconds) throws SQLException {
+        Properties props = new Properties();
+        props.setProperty("user", user);
+        props.setProperty("password", pass);
+        // Milisegundos; lo entienden tanto el driver de MySQL como el de MariaDB
+        props.setProperty("connectTimeout", String.valueOf(connectTimeoutSeconds * 1000L));
+        this.connection = DriverManager.getConnection(url, props);
+    }
+
+    // Crea las tablas que falten con las columnas que usan las consultas de esta clase; no altera las existentes
+    @Override
+    public void ensureSchema() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.addBatch("CREATE TABLE IF NOT EXISTS playtimes (" +
+                    "uuid VARCHAR(36) NOT NULL PRIMARY KEY, " +
+                    "tiempo_jugado BIGINT NOT NULL DEFAULT 0)");
+            stmt.addBatch("CREATE TABLE IF NOT EXISTS users (" +
+                    "uuid VARCHAR(36) NOT NULL PRIMARY KEY, " +
+                    "nombre VARCHAR(16) NOT NULL, " +
+                    "rango VARCHAR(64) NOT NULL, " +
+                    "tiempo_jugado_hoy BIGINT NOT NULL DEFAULT 0, " +
+                    "fecha_ultimo_reset DATE, " +
+                    "tiempo_base_rango BIGINT NOT NULL DEFAULT 0, " +
+                    "ultima_entrada BIGINT NOT NULL DEFAULT 0)");
+            stmt.addBatch("CREATE TABLE IF NOT EXISTS bonuses (" +
+                    "id INT NOT NULL AUTO_INCREMENT PRIMARY KEY, " +
+                    "uuid VARCHAR(36) NOT NULL, " +
+                    "tipo VARCHAR(16) NOT NULL, " +
+                    "tiempo_segundos BIGINT NOT NULL, " +
+                    "fecha_otorgado DATE NOT NULL, " +
+                    "activo BOOLEAN NOT NULL DEFAULT 1)");
+            stmt.addBatch("CREATE TABLE IF NOT EXISTS history (" +
+                    "id INT NOT NULL AUTO_INCREMENT PRIMARY KEY, " +
+                    "uuid VARCHAR(36) NOT NULL, " +
+                    "accion VARCHAR(255) NOT NULL, " +
+                    "fecha DATETIME NOT NULL)");
+            // Serie temporal: un registro por jugador, granularidad e inicio de bucket
+            stmt.addBatch("CREATE TABLE IF NOT EXISTS playtime_series (" +
+                    "uuid VARCHAR(36) NOT NULL, " +
+                    "granularidad VARCHAR(8) NOT NULL, " +
+                    "inicio_bucket BIGINT NOT NULL, " +
+                    "segundos BIGINT NOT NULL DEFAULT 0, " +
+                    "PRIMARY KEY (uuid, granularidad, inicio_bucket), " +
+                    "KEY idx_series_granularidad (granularidad, inicio_bucket))");
+            stmt.executeBatch();
+        }
+        // Instalaciones anteriores a la columna: los nombres repetidos se desempatan por última entrada
+        addColumnIfMissing("users", "ultima_entrada", "BIGINT NOT NULL DEFAULT 0");
+        // Ranking (ORDER BY tiempo_jugado DESC LIMIT n en cada auto-guardado) sin ordenar la tabla entera
+        addIndexIfMissing("playtimes", "idx_playtimes_tiempo", "tiempo_jugado");
+        // Tablas de serie creadas antes de que CREATE TABLE incluyera el índice de la purga
+        addIndexIfMissing("playtime_series", "idx_series_granularidad", "granularidad, inicio_bucket");
+    }
+
+    private void addIndexIfMissing(String table, String index, String columns) throws SQLException {
+        try (ResultSet rs = connection.getMetaData().getIndexInfo(connection.getCatalog(), null, table, false, true)) {
+            while (rs.next()) {
+                if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return;
+                }
+            }
+        }
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("CREATE INDEX " + index + " ON " + table + " (" + columns + ")");
+        }
+    }
+
+    private void addColumnIfMissing(String table, String column, String definition) throws SQLException {
+        try (ResultSet rs = connection.getMetaData().getColumns(connection.getCatalog(), null, table, column)) {
+            if (rs.next()) {
+                return;
+            }
+        }
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        }
     }
 
     @Override
@@ -53,6 +141,189 @@ public class DatabaseManager implements StorageManager {
         return result;
     }
 
+    @Override
+    public void recordPlaytime(Map<UUID, Long> seconds, long epochSecond) throws SQLException {
+        if (seconds.isEmpty()) {
+            return;
+        }
+        String totalSql = "INSERT INTO playtimes (uuid, tiempo_jugado) VALUES (?, ?) " +
+                "ON DUPLICATE KEY UPDATE tiempo_jugado = tiempo_jugado + VALUES(tiempo_jugado)";
+        String seriesSql = "INSERT INTO playtime_series (uuid, granularidad, inicio_bucket, segundos) VALUES (?, ?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE segundos = segundos + VALUES(segundos)";
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (PreparedStatement total = connection.prepareStatement(totalSql);
+             PreparedStatement series = connection.prepareStatement(seriesSql)) {
+            for (Map.Entry<UUID, Long> entry : seconds.entrySet()) {
+                String uuid = entry.getKey().toString();
+                long played = entry.getValue();
+
+                total.setString(1, uuid);
+                total.setLong(2, played);
+                total.addBatch();
+
+                for (Granularity granularity : Granularity.values()) {
+                    series.setString(1, uuid);
+                    series.setString(2, granularity.key());
+                    series.setLong(3, granularity.bucketStart(epochSecond));
+                    series.setLong(4, played);
+                    series.addBatch();
+                }
+            }
+            total.executeBatch();
+            series.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    @Override
+    public SortedMap<Long, Long> getPlaytimeSeries(UUID player, Granularity granularity, long from, long to) throws SQLException {
+        SortedMap<Long, Long> result = new TreeMap<>();
+        String sql = "SELECT inicio_bucket, segundos FROM playtime_series " +
+                "WHERE uuid = ? AND granularidad = ? AND inicio_bucket BETWEEN ? AND ?";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setString(1, player.toString());
+            ps.setString(2, granularity.key());
+            ps.setLong(3, from);
+            ps.setLong(4, to);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.put(rs.getLong("inicio_bucket"), rs.getLong("segundos"));
+                }
+            }
+        }
+        return result;
+    }
+
+    // Una sola sentencia por conjuntos, equivalente a resetPlayTime / addBonus / setRango para cada jugador
+    @Override
+    public int bulkUpdate(BulkOperation operation, BulkTarget target, BulkProgress progress) throws SQLException {
+        String filter = target.isAll() ? "" : " WHERE rango = ?";
+        String sql = switch (operation.type()) {
+            case RESET -> "UPDATE users SET tiempo_jugado_hoy = 0, fecha_ultimo_reset = CURDATE()" + filter;
+            case BONUS -> "INSERT INTO bonuses (uuid, tipo, tiempo_segundos, fecha_otorgado, activo) " +
+                    "SELECT uuid, ?, ?, CURDATE(), ? FROM users" + filter;
+            case RANK -> "UPDATE users SET rango = ?" + filter;
+        };
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            int index = 1;
+            switch (operation.type()) {
+                case BONUS -> {
+                    ps.setString(index++, operation.bonusType());
+                    ps.setLong(index++, operation.seconds());
+                    ps.setBoolean(index++, true);
+                }
+                case RANK -> ps.setString(index++, operation.rank());
+                default -> { }
+            }
+            if (!target.isAll()) {
+                ps.setString(index, target.group());
+            }
+            int affected = ps.executeUpdate();
+            progress.update(affected, affected);
+            return affected;
+        }
+    }
+
+    /**
+     * Importa los datos de otro almacenamiento (migración desde JSON) en una sola transacción. Totales y buckets se
+     * suman a los existentes; los usuarios sólo se crean si faltan, con <code>ultima_entrada = 0</code> para que
+     * nunca ganen un nombre a un registro real (nombre y rango se actualizan al volver a entrar).
+     */
+    public void importData(Map<UUID, Long> totals,
+                           Map<UUID, ? extends Map<String, ? extends Map<Long, Long>>> series,
+                           Map<UUID, String> names, Map<UUID, String> ranks) throws SQLException {
+        String totalSql = "INSERT INTO playtimes (uuid, tiempo_jugado) VALUES (?, ?) " +
+                "ON DUPLICATE KEY UPDATE tiempo_jugado = tiempo_jugado + VALUES(tiempo_jugado)";
+        String seriesSql = "INSERT INTO playtime_series (uuid, granularidad, inicio_bucket, segundos) VALUES (?, ?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE segundos = segundos + VALUES(segundos)";
+        String userSql = "INSERT IGNORE INTO users (uuid, nombre, rango, tiempo_jugado_hoy, fecha_ultimo_reset, ultima_entrada) " +
+                "VALUES (?, ?, ?, 0, CURDATE(), 0)";
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (PreparedStatement total = connection.prepareStatement(totalSql);
+             PreparedStatement bucket = connection.prepareStatement(seriesSql);
+             PreparedStatement user = connection.prepareStatement(userSql)) {
+            for (Map.Entry<UUID, Long> entry : totals.entrySet()) {
+                total.setString(1, entry.getKey().toString());
+                total.setLong(2, entry.getValue());
+                total.addBatch();
+            }
+            total.executeBatch();
+
+            int pending = 0;
+            for (var perPlayer : series.entrySet()) {
+                for (var perGranularity : perPlayer.getValue().entrySet()) {
+                    for (Map.Entry<Long, Long> point : perGranularity.getValue().entrySet()) {
+                        bucket.setString(1, perPlayer.getKey().toString());
+                        bucket.setString(2, perGranularity.getKey());
+                        bucket.setLong(3, point.getKey());
+                        bucket.setLong(4, point.getValue());
+                        bucket.addBatch();
+                        if (++pending % 1000 == 0) {
+                            bucket.executeBatch();
+                        }
+                    }
+                }
+            }
+            bucket.executeBatch();
+
+            for (Map.Entry<UUID, String> entry : names.entrySet()) {
+                String rank = ranks.get(entry.getKey());
+                user.setString(1, entry.getKey().toString());
+                user.setString(2, entry.getValue());
+                user.setString(3, rank != null ? rank : "default");
+                user.addBatch();
+            }
+            user.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    @Override
+    public int pruneSeries(Granularity granularity, long beforeEpochSecond) throws SQLException {
+        String sql = "DELETE FROM playtime_series WHERE granularidad = ? AND inicio_bucket < ?";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setString(1, granularity.key());
+            ps.setLong(2, beforeEpochSecond);
+            return ps.executeUpdate();
+        }
+    }
+
+    @Override
+    public void flush() {
+        // Cada escritura se confirma al ejecutarse; no hay nada pendiente
+    }
+
+    @Override
+    public List<LeaderboardEntry> loadTopPlayers(int limit) throws SQLException {
+        List<LeaderboardEntry> result = new ArrayList<>();
+        String sql = "SELECT p.uuid, u.nombre, p.tiempo_jugado FROM playtimes p " +
+                "LEFT JOIN users u ON u.uuid = p.uuid ORDER BY p.tiempo_jugado DESC LIMIT ?";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.add(new LeaderboardEntry(UUID.fromString(rs.getString("uuid")),
+                            rs.getString("nombre"), rs.getLong("tiempo_jugado")));
+                }
+            }
+        }
+        return result;
+    }
+
     @Override
     public void close() throws SQLException {
         if (connection != null && !connection.isClosed()) {
@@ -60,17 +331,60 @@ public class DatabaseManager implements StorageManager {
         }
     }
 
-    // Cargar o crear usuario
+    // Cargar o crear usuario (si ya existe se actualizan nombre, última entrada y, si se conoce, rango)
+    @Override
     public void ensureUserExists(UUID uuid, String nombre, String rango) throws SQLException {
         PreparedStatement ps = connection.prepareStatement(
-                "INSERT IGNORE INTO users (uuid, nombre, rango, tiempo_jugado_hoy, fecha_ultimo_reset) VALUES (?, ?, ?, 0, CURDATE())");
+                "INSERT INTO users (uuid, nombre, rango, tiempo_jugado_hoy, fecha_ultimo_reset, ultima_entrada) " +
+                        "VALUES (?, ?, IFNULL(?, 'default'), 0, CURDATE(), ?) " +
+                        "ON DUPLICATE KEY UPDATE nombre = VALUES(nombre), rango = IFNULL(?, rango), " +
+                        "ultima_entrada = VALUES(ultima_entrada)");
         ps.setString(1, uuid.toString());
         ps.setString(2, nombre);
         ps.setString(3, rango);
+        ps.setLong(4, System.currentTimeMillis() / 1000);
+        ps.setString(5, rango);
         ps.executeUpdate();
         ps.close();
     }
 
+    // Un nombre puede figurar en varias filas si cambió de dueño y el anterior aún no ha vuelto a entrar:
+    // el dueño actual es el que entró más recientemente con él
+    @Override
+    public PlayerProfile findPlayer(String nombre) throws SQLException {
+        String sql = "SELECT uuid, nombre FROM users WHERE nombre = ? ORDER BY ultima_entrada DESC LIMIT 1";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setString(1, nombre);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return new PlayerProfile(UUID.fromString(rs.getString("uuid")), rs.getString("nombre"));
+                }
+            }
+        }
+        return null;
+    }
+
+    // "Reciente" = con bucket diario en la serie desde la fecha indicada; de cada nombre sólo su dueño actual
+    @Override
+    public List<PlayerProfile> loadRecentPlayers(long sinceEpochSecond, int limit) throws SQLException {
+        List<PlayerProfile> result = new ArrayList<>();
+        String sql = "SELECT u.uuid, u.nombre FROM users u " +
+                "JOIN playtime_series s ON s.uuid = u.uuid AND s.granularidad = ? AND s.inicio_bucket >= ? " +
+                "WHERE NOT EXISTS (SELECT 1 FROM users o WHERE o.nombre = u.nombre AND o.ultima_entrada > u.ultima_entrada) " +
+                "GROUP BY u.uuid, u.nombre ORDER BY MAX(s.inicio_bucket) DESC LIMIT ?";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setString(1, Granularity.DAY.key());
+            ps.setLong(2, sinceEpochSecond);
+            ps.setInt(3, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.add(new PlayerProfile(UUID.fromString(rs.getString("uuid")), rs.getString("nombre")));
+                }
+            }
+        }
+        return result;
+    }
+
     // Sumar tiempo jugado hoy
     public void addPlayTime(UUID uuid, long seconds) throws SQLException {
         PreparedStatement ps = connection.prepareStatement(
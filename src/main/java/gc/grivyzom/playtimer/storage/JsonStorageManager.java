@@ -2,41 +2,134 @@ package gc.grivyzom.playtimer.storage;
 
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
+import gc.grivyzom.playtimer.admin.BulkOperation;
+import gc.grivyzom.playtimer.admin.BulkProgress;
+import gc.grivyzom.playtimer.admin.BulkTarget;
+import gc.grivyzom.playtimer.history.Granularity;
 import org.bukkit.plugin.Plugin;
 
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class JsonStorageManager implements StorageManager {
+    // Jugadores procesados entre cada aviso de progreso en operaciones masivas
+    private static final int BULK_CHUNK = 500;
+    private static final String DEFAULT_RANK = "default";
+
     private final File file;
+    private final File seriesFile;
+    private final File usersFile;
     private final Gson gson = new Gson();
+    private final Logger logger;
     private Map<UUID, Long> data;
+    // uuid → granularidad → inicio de bucket → segundos
+    private Map<UUID, Map<String, TreeMap<Long, Long>>> series;
+    private Map<UUID, UserEntry> users;
+    // nombre en minúsculas → uuid, reconstruido al cargar
+    private final Map<String, UUID> usersByName = new HashMap<>();
+    // Cambios pendientes de escribir a disco; se vuelcan en flush() (auto-guardado) y al cerrar
+    private boolean dataDirty;
+    private boolean seriesDirty;
+    private boolean usersDirty;
+    // Los datos ya están en MySQL y los ficheros archivados: no se vuelve a escribir nada
+    private boolean migrated;
 
     public JsonStorageManager(Plugin plugin) {
+        logger = plugin.getLogger();
         file = new File(plugin.getDataFolder(), "playtimes.json");
+        seriesFile = new File(plugin.getDataFolder(), "history.json");
+        usersFile = new File(plugin.getDataFolder(), "users.json");
         plugin.getDataFolder().mkdirs();
         load();
     }
 
+    // Los tres ficheros son independientes: se leen y parsean en paralelo
     private void load() {
-        try (FileReader reader = new FileReader(file)) {
-            Type type = new TypeToken<Map<UUID, Long>>(){}.getType();
-            data = gson.fromJson(reader, type);
-            if (data == null) data = new HashMap<>();
+        CompletableFuture<Map<UUID, Long>> totals = readAsync(file,
+                new TypeToken<Map<UUID, Long>>(){}.getType());
+        CompletableFuture<Map<UUID, Map<String, TreeMap<Long, Long>>>> buckets = readAsync(seriesFile,
+                new TypeToken<Map<UUID, Map<String, TreeMap<Long, Long>>>>(){}.getType());
+        CompletableFuture<Map<UUID, UserEntry>> entries = readAsync(usersFile,
+                new TypeToken<Map<UUID, UserEntry>>(){}.getType());
+
+        data = totals.join();
+        series = buckets.join();
+        users = entries.join();
+        users.forEach((uuid, user) -> usersByName.put(user.nombre.toLowerCase(Locale.ROOT), uuid));
+    }
+
+    // Un fichero que existe pero no se puede leer se aparta (.corrupt) para que el próximo volcado no lo pise
+    private <T extends Map<?, ?>> CompletableFuture<T> readAsync(File source, Type type) {
+        return CompletableFuture.supplyAsync(() -> {
+            if (source.isFile()) {
+                try (Reader reader = Files.newBufferedReader(source.toPath(), StandardCharsets.UTF_8)) {
+                    T parsed = gson.fromJson(reader, type);
+                    if (parsed != null) return parsed;
+                } catch (Exception e) {
+                    File backup = new File(source.getParentFile(),
+                            source.getName() + ".corrupt-" + System.currentTimeMillis());
+                    logger.log(Level.SEVERE, "No se pudo leer " + source.getName() + "; se renombra a "
+                            + backup.getName() + " y se empieza con datos vacíos", e);
+                    if (!source.renameTo(backup)) {
+                        logger.severe("No se pudo renombrar " + source.getName() + ", cópialo antes del próximo guardado.");
+                    }
+                }
+            }
+            @SuppressWarnings("unchecked")
+            T empty = (T) new HashMap<>();
+            return empty;
+        });
+    }
+
+    /**
+     * Escribe <code>content</code> en un temporal y lo mueve sobre <code>target</code>: un corte a mitad de
+     * escritura deja intacto el fichero anterior.
+     *
+     * @return <code>false</code> si falló (ya registrado en el log).
+     */
+    private boolean write(File target, Object content) {
+        Path tmp = target.toPath().resolveSibling(target.getName() + ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                gson.toJson(content, writer);
+            }
+            try {
+                Files.move(tmp, target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
         } catch (Exception e) {
-            data = new HashMap<>();
+            logger.log(Level.WARNING, "No se pudo guardar " + target.getName() + "; se reintentará en el próximo volcado", e);
+            return false;
         }
     }
 
-    private void save() {
-        try (FileWriter writer = new FileWriter(file)) {
-            gson.toJson(data, writer);
-        } catch (Exception ignored) {}
+    @Override
+    public void ensureSchema() {
+        // Los ficheros se crean en el primer guardado
     }
 
     @Override
@@ -47,7 +140,7 @@ public class JsonStorageManager implements StorageManager {
     @Override
     public void savePlayTime(UUID player, long time) {
         data.put(player, time);
-        save();
+        dataDirty = true;
     }
 
     @Override
@@ -55,8 +148,205 @@ public class JsonStorageManager implements StorageManager {
         return new HashMap<>(data);
     }
 
+    @Override
+    public void recordPlaytime(Map<UUID, Long> seconds, long epochSecond) {
+        if (seconds.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<UUID, Long> entry : seconds.entrySet()) {
+            data.merge(entry.getKey(), entry.getValue(), Long::sum);
+
+            Map<String, TreeMap<Long, Long>> buckets = series.computeIfAbsent(entry.getKey(), k -> new HashMap<>());
+            for (Granularity granularity : Granularity.values()) {
+                buckets.computeIfAbsent(granularity.key(), k -> new TreeMap<>())
+                        .merge(granularity.bucketStart(epochSecond), entry.getValue(), Long::sum);
+            }
+        }
+        dataDirty = true;
+        seriesDirty = true;
+    }
+
+    @Override
+    public SortedMap<Long, Long> getPlaytimeSeries(UUID player, Granularity granularity, long from, long to) {
+        Map<String, TreeMap<Long, Long>> buckets = series.get(player);
+        if (buckets == null || !buckets.containsKey(granularity.key())) {
+            return new TreeMap<>();
+        }
+        return new TreeMap<>(buckets.get(granularity.key()).subMap(from, true, to, true));
+    }
+
+    @Override
+    public void ensureUserExists(UUID uuid, String nombre, String rango) {
+        UserEntry existing = users.get(uuid);
+        if (rango == null) {
+            rango = existing != null ? existing.rango : DEFAULT_RANK;
+        }
+        UserEntry previous = users.put(uuid, new UserEntry(nombre, rango));
+        if (previous != null && !previous.nombre.equalsIgnoreCase(nombre)) {
+            usersByName.remove(previous.nombre.toLowerCase(Locale.ROOT), uuid);
+        }
+        usersByName.put(nombre.toLowerCase(Locale.ROOT), uuid);
+        if (previous == null || !previous.nombre.equals(nombre) || !previous.rango.equals(rango)) {
+            usersDirty = true;
+        }
+    }
+
+    @Override
+    public PlayerProfile findPlayer(String nombre) {
+        UUID uuid = usersByName.get(nombre.toLowerCase(Locale.ROOT));
+        return uuid == null ? null : new PlayerProfile(uuid, users.get(uuid).nombre);
+    }
+
+    @Override
+    public List<PlayerProfile> loadRecentPlayers(long sinceEpochSecond, int limit) {
+        Map<UUID, Long> lastDay = new HashMap<>();
+        series.forEach((uuid, buckets) -> {
+            TreeMap<Long, Long> days = buckets.get(Granularity.DAY.key());
+            if (days != null && !days.isEmpty() && days.lastKey() >= sinceEpochSecond && users.containsKey(uuid)) {
+                lastDay.put(uuid, days.lastKey());
+            }
+        });
+
+        List<PlayerProfile> result = new ArrayList<>();
+        lastDay.entrySet().stream()
+                .sorted(Map.Entry.<UUID, Long>comparingByValue(Comparator.reverseOrder()))
+                .limit(limit)
+                .forEach(e -> result.add(new PlayerProfile(e.getKey(), users.get(e.getKey()).nombre)));
+        return result;
+    }
+
+    // users.json sólo guarda nombre y rango: el contador diario y las bonificaciones existen únicamente en MySQL
+    @Override
+    public int bulkUpdate(BulkOperation operation, BulkTarget target, BulkProgress progress) throws SQLException {
+        if (operation.type() != BulkOperation.Type.RANK) {
+            throw new SQLException("La operación '" + operation.describe() + "' requiere almacenamiento MySQL");
+        }
+        List<UserEntry> targets = new ArrayList<>();
+        for (UserEntry user : users.values()) {
+            if (target.isAll() || target.group().equalsIgnoreCase(user.rango)) {
+                targets.add(user);
+            }
+        }
+
+        int done = 0;
+        for (UserEntry user : targets) {
+            user.rango = operation.rank();
+            if (++done % BULK_CHUNK == 0) {
+                progress.update(done, targets.size());
+            }
+        }
+        if (done > 0) {
+            usersDirty = true;
+        }
+        progress.update(done, targets.size());
+        return done;
+    }
+
+    @Override
+    public List<LeaderboardEntry> loadTopPlayers(int limit) {
+        List<LeaderboardEntry> result = new ArrayList<>();
+        data.entrySet().stream()
+                .sorted(Map.Entry.<UUID, Long>comparingByValue(Comparator.reverseOrder()))
+                .limit(limit)
+                .forEach(e -> {
+                    UserEntry user = users.get(e.getKey());
+                    result.add(new LeaderboardEntry(e.getKey(), user != null ? user.nombre : null, e.getValue()));
+                });
+        return result;
+    }
+
+    @Override
+    public int pruneSeries(Granularity granularity, long beforeEpochSecond) {
+        int removed = 0;
+        for (Map<String, TreeMap<Long, Long>> buckets : series.values()) {
+            TreeMap<Long, Long> points = buckets.get(granularity.key());
+            if (points != null) {
+                SortedMap<Long, Long> expired = points.headMap(beforeEpochSecond);
+                removed += expired.size();
+                expired.clear();
+            }
+        }
+        if (removed > 0) {
+            seriesDirty = true;
+        }
+        return removed;
+    }
+
+    // Sólo se reescriben los ficheros que cambiaron desde el último volcado
+    @Override
+    public void flush() {
+        if (migrated) {
+            return;
+        }
+        // Si la escritura falla el fichero sigue marcado y se reintenta en el siguiente volcado
+        if (dataDirty && write(file, data)) {
+            dataDirty = false;
+        }
+        if (seriesDirty && write(seriesFile, series)) {
+            seriesDirty = false;
+        }
+        if (usersDirty && write(usersFile, users)) {
+            usersDirty = false;
+        }
+    }
+
     @Override
     public void close() {
-        save();
+        flush();
+    }
+
+    // ───────────────────────────────── MIGRACIÓN A MYSQL ─────────────────────────────────
+
+    /** @return <code>true</code> si queda algún fichero de datos JSON (p. ej. de un arranque en modo fallback). */
+    public static boolean hasData(Plugin plugin) {
+        for (String name : new String[]{"playtimes.json", "history.json", "users.json"}) {
+            if (new File(plugin.getDataFolder(), name).isFile()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Suma a <code>target</code> todo lo guardado aquí (totales, historial y usuarios) en una transacción y archiva
+     * los ficheros como <code>.migrado-&lt;millis&gt;</code>, para que no se importen dos veces ni se vuelvan a
+     * cargar en un próximo fallback. Si la importación falla no se toca nada. Después de migrar, este storage
+     * ya no escribe en disco.
+     *
+     * @return número de jugadores con datos migrados.
+     */
+    public int migrateInto(DatabaseManager target) throws SQLException {
+        Map<UUID, String> names = new HashMap<>();
+        Map<UUID, String> ranks = new HashMap<>();
+        users.forEach((uuid, user) -> {
+            names.put(uuid, user.nombre);
+            ranks.put(uuid, user.rango);
+        });
+        target.importData(data, series, names, ranks);
+
+        String suffix = ".migrado-" + System.currentTimeMillis();
+        for (File source : new File[]{file, seriesFile, usersFile}) {
+            if (source.isFile() && !source.renameTo(new File(source.getParentFile(), source.getName() + suffix))) {
+                logger.warning("No se pudo archivar " + source.getName() + " tras migrarlo a MySQL; renómbralo a mano "
+                        + "para que no se vuelva a importar.");
+            }
+        }
+        migrated = true;
+
+        Set<UUID> players = new HashSet<>(data.keySet());
+        players.addAll(series.keySet());
+        players.addAll(users.keySet());
+        return players.size();
+    }
+
+    // Registro de users.json
+    private static final class UserEntry {
+        private String nombre;
+        private String rango;
+
+        private UserEntry(String nombre, String rango) {
+            this.nombre = nombre;
+            this.rango = rango;
+        }
     }
 }
@@ -0,0 +1,10 @@
+package gc.grivyzom.playtimer.storage;
+
+import java.util.UUID;
+
+/**
+ * Posición del ranking de tiempo total. <code>name</code> puede ser <code>null</code> si el jugador no tiene
+ * registro en <code>users</code>.
+ */
+public record LeaderboardEntry(UUID uuid, String name, long seconds) {
+}
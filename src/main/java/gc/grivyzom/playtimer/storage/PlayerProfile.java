@@ -0,0 +1,9 @@
+package gc.grivyzom.playtimer.storage;
+
+import java.util.UUID;
+
+/**
+ * Jugador conocido por el storage: UUID y último nombre con el que entró.
+ */
+public record PlayerProfile(UUID uuid, String name) {
+}
@@ -1,13 +1,78 @@
 // src/main/java/gc/grivyzom/playtimer/storage/StorageManager.java
 package gc.grivyzom.playtimer.storage;
 
+import gc.grivyzom.playtimer.admin.BulkOperation;
+import gc.grivyzom.playtimer.admin.BulkProgress;
+import gc.grivyzom.playtimer.admin.BulkTarget;
+import gc.grivyzom.playtimer.history.Granularity;
+
 import java.sql.SQLException;
+import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
 import java.util.UUID;
 
 public interface StorageManager {
+    /**
+     * Comprueba y, si hace falta, crea las estructuras de almacenamiento. Se llama una vez tras abrir el storage
+     * y antes de cualquier otra operación.
+     */
+    void ensureSchema() throws SQLException;
+
     long getPlayTime(UUID player) throws SQLException;
     void savePlayTime(UUID player, long time) throws SQLException;
     Map<UUID, Long> loadAll() throws SQLException;
     void close() throws SQLException;
+
+    /**
+     * Suma los segundos de cada jugador a su total y a los buckets hora/día/semana/mes que contienen
+     * <code>epochSecond</code>, todo en un mismo volcado.
+     */
+    void recordPlaytime(Map<UUID, Long> seconds, long epochSecond) throws SQLException;
+
+    /**
+     * @return buckets con tiempo registrado entre <code>from</code> y <code>to</code> (inicios de bucket, ambos
+     *         incluidos), ordenados: key = inicio del bucket (epoch), value = segundos.
+     */
+    SortedMap<Long, Long> getPlaytimeSeries(UUID player, Granularity granularity, long from, long to) throws SQLException;
+
+    /**
+     * Crea el usuario o actualiza su nombre y rango actuales (se llama al entrar). Con <code>rango</code>
+     * <code>null</code> se conserva el guardado (<code>default</code> si es nuevo).
+     */
+    void ensureUserExists(UUID uuid, String nombre, String rango) throws SQLException;
+
+    /** @return el jugador con ese nombre (sin distinguir mayúsculas), o <code>null</code> si no se conoce. */
+    PlayerProfile findPlayer(String nombre) throws SQLException;
+
+    /**
+     * @return jugadores con tiempo registrado desde <code>sinceEpochSecond</code>, del más al menos reciente,
+     *         como máximo <code>limit</code>.
+     */
+    List<PlayerProfile> loadRecentPlayers(long sinceEpochSecond, int limit) throws SQLException;
+
+    /**
+     * Aplica una operación de administración a todos los jugadores del objetivo de una sola vez (SQL por
+     * conjuntos o lotes), informando del avance a <code>progress</code>.
+     *
+     * @return número de jugadores afectados.
+     * @throws SQLException también si el backend no guarda los datos que modifica la operación.
+     */
+    int bulkUpdate(BulkOperation operation, BulkTarget target, BulkProgress progress) throws SQLException;
+
+    /**
+     * Borra los buckets de <code>granularity</code> que empiezan antes de <code>beforeEpochSecond</code>.
+     *
+     * @return número de buckets eliminados.
+     */
+    int pruneSeries(Granularity granularity, long beforeEpochSecond) throws SQLException;
+
+    /**
+     * Persiste los cambios que el backend mantenga sólo en memoria. Se llama en cada auto-guardado y desde
+     * {@link #close()}.
+     */
+    void flush() throws SQLException;
+
+    /** @return los <code>limit</code> jugadores con más tiempo total, de mayor a menor. */
+    List<LeaderboardEntry> loadTopPlayers(int limit) throws SQLException;
 }
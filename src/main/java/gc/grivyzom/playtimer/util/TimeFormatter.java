@@ -0,0 +1,26 @@
+package gc.grivyzom.playtimer.util;
+
+/**
+ * Utilidades para mostrar duraciones en formato legible.
+ */
+public final class TimeFormatter {
+
+    private TimeFormatter() {
+    }
+
+    /**
+     * @return la duración como <code>3h 20m 5s</code> (se omiten las unidades iniciales a cero).
+     */
+    public static String format(long seconds) {
+        long h = seconds / 3600;
+        long m = (seconds % 3600) / 60;
+        long s = seconds % 60;
+        if (h > 0) {
+            return h + "h " + m + "m " + s + "s";
+        }
+        if (m > 0) {
+            return m + "m " + s + "s";
+        }
+        return s + "s";
+    }
+}